@@ -0,0 +1,66 @@
+package com.flyaway.trackplayer;
+
+import org.bukkit.entity.EntityType;
+import org.mockbukkit.mockbukkit.MockBukkit;
+import org.mockbukkit.mockbukkit.ServerMock;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+// Плагин, запущенный на заглушке сервера MockBukkit, и заполнение его хранилища для бенчмарков
+final class BenchmarkServer {
+
+    final ServerMock server;
+    final TrackPlayer plugin;
+
+    private BenchmarkServer(ServerMock server, TrackPlayer plugin) {
+        this.server = server;
+        this.plugin = plugin;
+    }
+
+    // storageType - yaml, sqlite или binary; автосохранение отодвинуто, чтобы не мешать замерам
+    static BenchmarkServer start(String storageType, boolean journal) {
+        ServerMock server = MockBukkit.mock();
+        TrackPlayer plugin = MockBukkit.load(TrackPlayer.class);
+
+        // Хранилище и журнал выбираются при включении - перезапускаем плагин с нужными настройками
+        plugin.getConfig().set("storage.type", storageType);
+        plugin.getConfig().set("journal.enabled", journal);
+        plugin.getConfig().set("auto-save-interval", 600);
+        server.getPluginManager().disablePlugin(plugin);
+        server.getPluginManager().enablePlugin(plugin);
+        // Хранилище открывается первой задачей потока записи
+        if (!plugin.getDataWriter().awaitIdle(600)) {
+            throw new IllegalStateException("Хранилище " + storageType + " не загрузилось");
+        }
+        return new BenchmarkServer(server, plugin);
+    }
+
+    // UUID игрока с номером index в заполненном хранилище
+    static UUID storedPlayer(int index) {
+        return new UUID(0x7472616b, index);
+    }
+
+    // Записывает count игроков прямо в хранилище, минуя кэш и поток записи
+    void populate(int count) throws IOException {
+        StatType zombieKills = plugin.getMobKillStats().get(EntityType.ZOMBIE);
+        int size = Math.max(StatRegistry.BUILT_IN_COUNT, zombieKills.id() + 1);
+        List<StatsSnapshot> batch = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            long[] values = new long[size];
+            values[StatRegistry.DEATHS.id()] = i % 97;
+            values[StatRegistry.PLAYER_KILLS.id()] = i % 31;
+            values[StatRegistry.MOB_KILLS.id()] = i % 1009;
+            values[zombieKills.id()] = i % 211;
+            batch.add(new StatsSnapshot(storedPlayer(i), values));
+        }
+        // Одним сохранением: YAML-хранилище переписывает файл целиком при каждом вызове
+        plugin.getStorage().save(batch);
+    }
+
+    void stop() {
+        MockBukkit.unmock();
+    }
+}
@@ -0,0 +1,146 @@
+package com.flyaway.trackplayer;
+
+import org.bukkit.entity.EntityType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Воспроизведение убийств мобов из нескольких потоков, как в регионах Folia: каждый поток владеет своими
+// игроками, а глобальный поток параллельно выполняет тики и сохранения. После замера счетчики, рейтинги
+// и хранилище сверяются с числом воспроизведенных событий - расхождение завершает бенчмарк ошибкой.
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+public class EventReplayBenchmark {
+
+    private static final List<EntityType> MOBS = List.of(EntityType.ZOMBIE, EntityType.SKELETON, EntityType.CREEPER, EntityType.SPIDER);
+    private static final int LOG_SIZE = 4096;
+
+    @Param({"50"})
+    public int playersPerRegion;
+
+    private BenchmarkServer bench;
+    private final AtomicInteger regionCount = new AtomicInteger();
+    private final Queue<Region> regions = new ConcurrentLinkedQueue<>();
+
+    // Игроки одного потока и ожидаемые значения их счетчиков
+    @State(Scope.Thread)
+    public static class Region {
+        private UUID[] players;
+        private long[][] expected;
+        private int[] logPlayers;
+        private int[] logMobs;
+        private int position;
+
+        @Setup(Level.Trial)
+        public void setup(EventReplayBenchmark replay) {
+            int index = replay.regionCount.getAndIncrement();
+            players = new UUID[replay.playersPerRegion];
+            expected = new long[players.length][MOBS.size()];
+            for (int i = 0; i < players.length; i++) {
+                players[i] = new UUID(0x7265706c, (long) index * players.length + i);
+                replay.bench.plugin.getOrCreatePlayerStats(players[i]);
+            }
+
+            // Свой журнал событий у каждого потока, одинаковый между запусками
+            Random random = new Random(index);
+            logPlayers = new int[LOG_SIZE];
+            logMobs = new int[LOG_SIZE];
+            for (int i = 0; i < LOG_SIZE; i++) {
+                logPlayers[i] = random.nextInt(players.length);
+                logMobs[i] = random.nextInt(MOBS.size());
+            }
+            replay.regions.add(this);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class GlobalTicks {
+        private int ticks;
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        bench = BenchmarkServer.start("binary", true);
+    }
+
+    @TearDown(Level.Trial)
+    public void verify() throws IOException {
+        try {
+            bench.plugin.applyLeaderboardUpdates();
+            bench.plugin.saveAllOnlinePlayersData();
+            if (!bench.plugin.getDataWriter().awaitIdle(600)) {
+                throw new IllegalStateException("Поток записи не выполнил сохранение за 600 сек");
+            }
+
+            for (Region region : regions) {
+                for (int i = 0; i < region.players.length; i++) {
+                    UUID uuid = region.players[i];
+                    StatsSnapshot stored = bench.plugin.getStorage().load(uuid);
+                    long total = 0;
+                    for (int mob = 0; mob < MOBS.size(); mob++) {
+                        StatType stat = bench.plugin.getMobKillStats().get(MOBS.get(mob));
+                        check(uuid, stat, region.expected[i][mob], stored);
+                        total += region.expected[i][mob];
+                    }
+                    check(uuid, StatRegistry.MOB_KILLS, total, stored);
+                }
+            }
+        } finally {
+            bench.stop();
+        }
+    }
+
+    private void check(UUID uuid, StatType stat, long expected, StatsSnapshot stored) {
+        long counter = bench.plugin.getStat(uuid, stat);
+        long ranked = bench.plugin.getLeaderboard(stat).getValue(uuid);
+        long saved = stored != null ? stat.decode(stored.get(stat)) : 0;
+        if (counter != expected || ranked != expected || saved != expected) {
+            throw new IllegalStateException("Расхождение " + stat.key() + " у " + uuid + ": ожидалось " + expected
+                    + ", счетчик " + counter + ", рейтинг " + ranked + ", хранилище " + saved);
+        }
+    }
+
+    // Поток региона: очередное событие своего журнала
+    @Benchmark
+    @Group("replay")
+    @GroupThreads(4)
+    public void regionEvent(Region region) {
+        int event = region.position++ & (LOG_SIZE - 1);
+        int player = region.logPlayers[event];
+        int mob = region.logMobs[event];
+        bench.plugin.incrementMobKill(region.players[player], MOBS.get(mob));
+        region.expected[player][mob]++;
+    }
+
+    // Глобальный поток: перенос в рейтинги каждый тик и сохранение раз в 20 тиков
+    @Benchmark
+    @Group("replay")
+    @GroupThreads(1)
+    public void globalTick(GlobalTicks global) {
+        bench.plugin.applyLeaderboardUpdates();
+        if (++global.ticks % 20 == 0) {
+            bench.plugin.saveAllOnlinePlayersData();
+        }
+    }
+}
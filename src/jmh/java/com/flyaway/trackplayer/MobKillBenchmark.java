@@ -0,0 +1,120 @@
+package com.flyaway.trackplayer;
+
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.damage.DamageSource;
+import org.bukkit.damage.DamageType;
+import org.bukkit.entity.EntityType;
+import org.bukkit.entity.LivingEntity;
+import org.bukkit.event.entity.EntityDeathEvent;
+import org.mockbukkit.mockbukkit.entity.PlayerMock;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.ArrayList;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Пропускная способность учета убийств мобов: обработчик события и прямой вызов API, в том числе из нескольких потоков
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MobKillBenchmark {
+
+    @Param({"100"})
+    public int players;
+
+    @Param({"true", "false"})
+    public boolean journal;
+
+    private BenchmarkServer bench;
+    private MobKillListener listener;
+    private EntityDeathEvent[] events;
+    private UUID[] killers;
+
+    // Позиция потока в массивах событий и игроков
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int position = ThreadLocalRandom.current().nextInt(1 << 16);
+
+        int next(int length) {
+            return Math.floorMod(position++, length);
+        }
+
+        // Раз в 1024 события - перенос изменений в рейтинги, который на сервере выполняется каждый тик
+        boolean tick() {
+            return (position & 1023) == 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws InterruptedException {
+        bench = BenchmarkServer.start("binary", journal);
+        World world = bench.server.addSimpleWorld("world");
+        Location spawn = new Location(world, 0, 64, 0);
+
+        killers = new UUID[players];
+        events = new EntityDeathEvent[players];
+        for (int i = 0; i < players; i++) {
+            PlayerMock player = bench.server.addPlayer();
+            killers[i] = player.getUniqueId();
+
+            LivingEntity zombie = (LivingEntity) world.spawnEntity(spawn, EntityType.ZOMBIE);
+            zombie.setKiller(player);
+            events[i] = new EntityDeathEvent(zombie, DamageSource.builder(DamageType.PLAYER_ATTACK).build(), new ArrayList<>());
+        }
+        // Догрузка записей вошедших игроков выполняется асинхронно
+        bench.server.getScheduler().waitAsyncTasksFinished();
+
+        listener = new MobKillListener(bench.plugin);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        bench.stop();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void onEntityDeath(Cursor cursor) {
+        listener.onEntityDeath(events[cursor.next(events.length)]);
+        applyLeaderboardUpdates(cursor);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void onEntityDeathContended(Cursor cursor) {
+        listener.onEntityDeath(events[cursor.next(events.length)]);
+        applyLeaderboardUpdates(cursor);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void incrementMobKills(Cursor cursor) {
+        bench.plugin.incrementMobKill(killers[cursor.next(killers.length)], EntityType.ZOMBIE);
+        applyLeaderboardUpdates(cursor);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void incrementMobKillsContended(Cursor cursor) {
+        bench.plugin.incrementMobKill(killers[cursor.next(killers.length)], EntityType.ZOMBIE);
+        applyLeaderboardUpdates(cursor);
+    }
+
+    private void applyLeaderboardUpdates(Cursor cursor) {
+        if (cursor.tick()) {
+            bench.plugin.applyLeaderboardUpdates();
+        }
+    }
+}
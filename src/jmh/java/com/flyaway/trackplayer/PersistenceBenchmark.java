@@ -0,0 +1,104 @@
+package com.flyaway.trackplayer;
+
+import org.bukkit.entity.EntityType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+// Чтение всех игроков из хранилища и полный цикл сохранения онлайн игроков
+public class PersistenceBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Dataset {
+        @Param({"10000", "100000", "1000000"})
+        public int storedPlayers;
+
+        @Param({"yaml", "sqlite", "binary"})
+        public String storage;
+
+        BenchmarkServer bench;
+
+        @Setup(Level.Trial)
+        public void setup() throws IOException {
+            bench = BenchmarkServer.start(storage, false);
+            bench.populate(storedPlayers);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            bench.stop();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class OnlinePlayers {
+        @Param({"100", "1000"})
+        public int onlinePlayers;
+
+        @Param({"yaml", "sqlite", "binary"})
+        public String storage;
+
+        BenchmarkServer bench;
+        UUID[] players;
+
+        @Setup(Level.Trial)
+        public void setup() throws IOException {
+            bench = BenchmarkServer.start(storage, true);
+            bench.populate(10_000);
+            players = new UUID[onlinePlayers];
+            for (int i = 0; i < onlinePlayers; i++) {
+                players[i] = BenchmarkServer.storedPlayer(i);
+                bench.plugin.incrementMobKill(players[i], EntityType.ZOMBIE);
+            }
+        }
+
+        // Каждый цикл сохраняет все записи: перед замером каждая получает изменение
+        @Setup(Level.Invocation)
+        public void touch() {
+            for (UUID uuid : players) {
+                bench.plugin.incrementStat(uuid, StatRegistry.DEATHS);
+            }
+            bench.plugin.applyLeaderboardUpdates();
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            bench.stop();
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 1)
+    @Measurement(iterations = 3)
+    @Fork(1)
+    public Map<UUID, Integer> getPlayerMobKills(Dataset dataset) {
+        return dataset.bench.plugin.getPlayerMobKills();
+    }
+
+    // Снимки в основном потоке и запись пачки в потоке записи до ее завершения
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public boolean saveAllOnlinePlayersData(OnlinePlayers online) {
+        boolean queued = online.bench.plugin.saveAllOnlinePlayersData();
+        online.bench.plugin.getDataWriter().awaitIdle(600);
+        return queued;
+    }
+}
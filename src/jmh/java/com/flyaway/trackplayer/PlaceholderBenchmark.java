@@ -0,0 +1,97 @@
+package com.flyaway.trackplayer;
+
+import org.bukkit.OfflinePlayer;
+import org.bukkit.entity.EntityType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// Задержка StatsPlaceholder.onRequest для игрока в кэше и для офлайн игрока из хранилища.
+// Для игрока в кэше gc.alloc.rate.norm должен быть около нуля: значение не меняется между запросами.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PlaceholderBenchmark {
+
+    @Param({"kills", "mob_kills_weekly", "mob_kills_zombie", "top_kills_1_name", "rank_mob_kills"})
+    public String params;
+
+    @Param({"binary", "sqlite"})
+    public String storage;
+
+    private static final int STORED_PLAYERS = 10_000;
+
+    private BenchmarkServer bench;
+    private StatsPlaceholder placeholder;
+    private OfflinePlayer online;
+    private OfflinePlayer offline;
+    private OfflinePlayer[] stored;
+
+    // Офлайн-кэш на одну запись: почти каждый запрос идет в хранилище
+    @State(Scope.Benchmark)
+    public static class ColdCache {
+        @Setup(Level.Trial)
+        public void setup(PlaceholderBenchmark benchmark) {
+            benchmark.bench.plugin.getOfflineCache().configure(1, 300);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int position;
+
+        int next(int length) {
+            return Math.floorMod(position++, length);
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        bench = BenchmarkServer.start(storage, false);
+        bench.populate(STORED_PLAYERS);
+
+        // Игрок в кэше: любое изменение создает его запись
+        online = bench.server.getOfflinePlayer(BenchmarkServer.storedPlayer(0));
+        bench.plugin.incrementMobKill(online.getUniqueId(), EntityType.ZOMBIE);
+
+        offline = bench.server.getOfflinePlayer(BenchmarkServer.storedPlayer(1));
+        stored = new OfflinePlayer[STORED_PLAYERS];
+        for (int i = 0; i < STORED_PLAYERS; i++) {
+            stored[i] = bench.server.getOfflinePlayer(BenchmarkServer.storedPlayer(i));
+        }
+
+        placeholder = new StatsPlaceholder();
+        bench.plugin.applyLeaderboardUpdates();
+        bench.plugin.getLeaderboardCache().refresh();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        bench.stop();
+    }
+
+    @Benchmark
+    public String onlinePlayer() {
+        return placeholder.onRequest(online, params);
+    }
+
+    @Benchmark
+    public String offlinePlayer() {
+        return placeholder.onRequest(offline, params);
+    }
+
+    @Benchmark
+    public String offlinePlayerColdCache(ColdCache cold, Cursor cursor) {
+        return placeholder.onRequest(stored[cursor.next(stored.length)], params);
+    }
+}
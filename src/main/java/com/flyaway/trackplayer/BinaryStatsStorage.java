@@ -0,0 +1,485 @@
+package com.flyaway.trackplayer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.ObjLongConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Компактный двоичный формат: записи фиксированной длины (UUID + long на каждую статистику) в файле,
+// отображенном в память через NIO. В куче хранится только индекс UUID -> номер записи,
+// сохранение перезаписывает изменившиеся записи на месте.
+// Заголовок содержит список ключей статистик (столбцов); при появлении новой статистики файл
+// один раз перестраивается с расширенной записью.
+public class BinaryStatsStorage implements StatsStorage {
+
+    private static final int MAGIC = 0x54505354; // "TPST"
+    private static final int VERSION = 2;
+    // magic, version, размер заголовка, размер записи, количество записей, количество столбцов, ключи
+    private static final int FIXED_HEADER_SIZE = 24;
+    private static final int RECORD_COUNT_OFFSET = 16;
+    private static final int MIN_CAPACITY = 4096;
+
+    // Формат версии 1: uuid + deaths, player_kills, mob_kills (int)
+    private static final int V1_HEADER_SIZE = 16;
+    private static final int V1_RECORD_SIZE = 28;
+
+    private final File file;
+    private final StatRegistry registry;
+    private final Logger logger;
+    // Индекс и отображение меняются только под блокировкой записи
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private SlotIndex index;
+    private int recordCount;
+    private int capacity;
+    private int headerSize;
+    private int recordSize;
+    // Столбец -> статистика и id статистики -> столбец (-1, если столбца нет)
+    private StatType[] columns = new StatType[0];
+    private int[] columnOf = new int[0];
+
+    public BinaryStatsStorage(File file, StatRegistry registry, Logger logger) {
+        this.file = file;
+        this.registry = registry;
+        this.logger = logger;
+    }
+
+    @Override
+    public String getName() {
+        return "binary";
+    }
+
+    @Override
+    public void open() throws IOException {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        long size = channel.size();
+        if (size < FIXED_HEADER_SIZE) {
+            channel.close();
+            writeLayout(builtInColumns(), 0, (slot, type) -> 0);
+            return;
+        }
+
+        MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, Integer.MAX_VALUE));
+        if (header.getInt(0) != MAGIC) {
+            throw new IOException("Неизвестный формат файла " + file.getName());
+        }
+
+        int version = header.getInt(4);
+        if (version == 1 && header.getInt(8) == V1_RECORD_SIZE) {
+            migrateFromV1(header);
+            return;
+        }
+        if (version != VERSION) {
+            throw new IOException("Неподдерживаемая версия файла " + file.getName() + ": " + version);
+        }
+
+        headerSize = header.getInt(8);
+        recordSize = header.getInt(12);
+        int columnCount = header.getInt(20);
+        StatType[] stored = new StatType[columnCount];
+        int position = FIXED_HEADER_SIZE;
+        for (int column = 0; column < columnCount; column++) {
+            int length = header.getShort(position);
+            byte[] key = new byte[length];
+            header.get(position + 2, key);
+            position += 2 + length;
+            stored[column] = registry.register(new String(key, StandardCharsets.UTF_8), null);
+        }
+        setColumns(stored);
+
+        capacity = (int) Math.max(MIN_CAPACITY, (size - headerSize) / recordSize);
+        remap();
+        recordCount = buffer.getInt(RECORD_COUNT_OFFSET);
+        rebuildIndex();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        lock.readLock().lock();
+        try {
+            return recordCount == 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int count() {
+        lock.readLock().lock();
+        try {
+            return recordCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public StatsSnapshot load(UUID uuid) {
+        lock.readLock().lock();
+        try {
+            int slot = index.get(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+            if (slot < 0) {
+                return null;
+            }
+            int offset = offset(slot) + 16;
+            long[] values = new long[columnOf.length];
+            for (int column = 0; column < columns.length; column++) {
+                values[columns[column].id()] = buffer.getLong(offset + column * Long.BYTES);
+            }
+            return new StatsSnapshot(uuid, values);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void forEachValue(StatType type, ObjLongConsumer<UUID> consumer) {
+        lock.readLock().lock();
+        try {
+            int field = fieldOffset(type.id());
+            if (field < 0) {
+                return;
+            }
+            for (int slot = 0; slot < recordCount; slot++) {
+                int offset = offset(slot);
+                long value = buffer.getLong(offset + field);
+                if (value != 0) {
+                    consumer.accept(new UUID(buffer.getLong(offset), buffer.getLong(offset + 8)), value);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public long save(Collection<StatsSnapshot> snapshots) throws IOException {
+        lock.writeLock().lock();
+        try {
+            StatType[] missing = missingColumns(snapshots);
+            if (missing.length > 0) {
+                expandColumns(missing);
+            }
+
+            for (StatsSnapshot snapshot : snapshots) {
+                long msb = snapshot.uuid().getMostSignificantBits();
+                long lsb = snapshot.uuid().getLeastSignificantBits();
+                int slot = index.get(msb, lsb);
+                if (slot < 0) {
+                    slot = appendRecord(msb, lsb);
+                }
+
+                int offset = offset(slot) + 16;
+                for (int column = 0; column < columns.length; column++) {
+                    buffer.putLong(offset + column * Long.BYTES, snapshot.get(columns[column]));
+                }
+            }
+            buffer.putInt(RECORD_COUNT_OFFSET, recordCount);
+            buffer.force();
+            return (long) snapshots.size() * recordSize;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void resetAll(StatType type) {
+        lock.writeLock().lock();
+        try {
+            int field = fieldOffset(type.id());
+            if (field < 0) {
+                return;
+            }
+            for (int slot = 0; slot < recordCount; slot++) {
+                buffer.putLong(offset(slot) + field, 0);
+            }
+            buffer.force();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            buffer.force();
+            channel.close();
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Ошибка закрытия файла " + file.getName(), e);
+        }
+    }
+
+    // Статистики с ненулевыми значениями, для которых в файле еще нет столбца
+    private StatType[] missingColumns(Collection<StatsSnapshot> snapshots) {
+        Set<StatType> missing = new LinkedHashSet<>();
+        for (StatsSnapshot snapshot : snapshots) {
+            for (int id = 0; id < snapshot.size(); id++) {
+                if (snapshot.get(id) != 0 && fieldOffset(id) < 0) {
+                    StatType type = registry.byId(id);
+                    if (type != null) {
+                        missing.add(type);
+                    }
+                }
+            }
+        }
+        return missing.toArray(new StatType[0]);
+    }
+
+    // Перестраивает файл, добавляя столбцы только для статистик, у которых появились значения
+    private void expandColumns(StatType[] missing) throws IOException {
+        StatType[] oldColumns = columns;
+        int[] oldColumnOf = columnOf;
+        MappedByteBuffer old = buffer;
+        StatType[] newColumns = Arrays.copyOf(oldColumns, oldColumns.length + missing.length);
+        System.arraycopy(missing, 0, newColumns, oldColumns.length, missing.length);
+
+        buffer.force();
+        channel.close();
+        writeLayout(newColumns, recordCount, (slot, type) -> {
+            int column = type.id() < oldColumnOf.length ? oldColumnOf[type.id()] : -1;
+            return column < 0 ? 0 : old.getLong(offset(slot) + 16 + column * Long.BYTES);
+        });
+        logger.info("Файл " + file.getName() + " перестроен: столбцов " + oldColumns.length + " -> " + columns.length);
+    }
+
+    private void migrateFromV1(MappedByteBuffer old) throws IOException {
+        int count = old.getInt(12);
+        channel.close();
+        writeLayout(builtInColumns(), count, (slot, type) -> {
+            int base = V1_HEADER_SIZE + slot * V1_RECORD_SIZE;
+            return switch (type.key()) {
+                case "deaths" -> old.getInt(base + 16);
+                case "player_kills" -> old.getInt(base + 20);
+                case "mob_kills" -> old.getInt(base + 24);
+                default -> 0;
+            };
+        }, slot -> {
+            int base = V1_HEADER_SIZE + slot * V1_RECORD_SIZE;
+            return new long[]{old.getLong(base), old.getLong(base + 8)};
+        });
+        logger.info("Файл " + file.getName() + " преобразован в формат версии " + VERSION + ", записей: " + count);
+    }
+
+    private void writeLayout(StatType[] newColumns, int count, ValueSource values) throws IOException {
+        writeLayout(newColumns, count, values, slot -> new long[]{buffer.getLong(offset(slot)), buffer.getLong(offset(slot) + 8)});
+    }
+
+    // Пишет файл с новым набором столбцов во временный файл и атомарно заменяет им старый
+    private void writeLayout(StatType[] newColumns, int count, ValueSource values, UuidSource uuids) throws IOException {
+        List<byte[]> keys = new ArrayList<>(newColumns.length);
+        int keysSize = 0;
+        for (StatType type : newColumns) {
+            byte[] key = type.key().getBytes(StandardCharsets.UTF_8);
+            keys.add(key);
+            keysSize += 2 + key.length;
+        }
+        int newHeaderSize = (FIXED_HEADER_SIZE + keysSize + 7) & ~7;
+        int newRecordSize = 16 + newColumns.length * Long.BYTES;
+        int newCapacity = Math.max(MIN_CAPACITY, count);
+
+        Path target = file.toPath();
+        Path tempFile = target.resolveSibling(file.getName() + ".tmp");
+        try (FileChannel temp = FileChannel.open(tempFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer out = temp.map(FileChannel.MapMode.READ_WRITE, 0,
+                    newHeaderSize + (long) newCapacity * newRecordSize);
+            out.putInt(0, MAGIC);
+            out.putInt(4, VERSION);
+            out.putInt(8, newHeaderSize);
+            out.putInt(12, newRecordSize);
+            out.putInt(RECORD_COUNT_OFFSET, count);
+            out.putInt(20, newColumns.length);
+            int position = FIXED_HEADER_SIZE;
+            for (byte[] key : keys) {
+                out.putShort(position, (short) key.length);
+                out.put(position + 2, key);
+                position += 2 + key.length;
+            }
+
+            for (int slot = 0; slot < count; slot++) {
+                int offset = newHeaderSize + slot * newRecordSize;
+                long[] uuid = uuids.get(slot);
+                out.putLong(offset, uuid[0]);
+                out.putLong(offset + 8, uuid[1]);
+                for (int column = 0; column < newColumns.length; column++) {
+                    out.putLong(offset + 16 + column * Long.BYTES, values.get(slot, newColumns[column]));
+                }
+            }
+            out.force();
+        }
+
+        try {
+            Files.move(tempFile, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tempFile, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        channel = FileChannel.open(target, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        headerSize = newHeaderSize;
+        recordSize = newRecordSize;
+        capacity = newCapacity;
+        recordCount = count;
+        setColumns(newColumns);
+        remap();
+        rebuildIndex();
+    }
+
+    // Новый файл создается только со встроенными статистиками, остальные столбцы добавляются по мере появления данных
+    private StatType[] builtInColumns() {
+        return registry.getAll().subList(0, StatRegistry.BUILT_IN_COUNT).toArray(new StatType[0]);
+    }
+
+    private void setColumns(StatType[] newColumns) {
+        int maxId = -1;
+        for (StatType type : newColumns) {
+            maxId = Math.max(maxId, type.id());
+        }
+        int[] mapping = new int[maxId + 1];
+        Arrays.fill(mapping, -1);
+        for (int column = 0; column < newColumns.length; column++) {
+            mapping[newColumns[column].id()] = column;
+        }
+        columns = newColumns;
+        columnOf = mapping;
+    }
+
+    private void rebuildIndex() {
+        index = new SlotIndex(Math.max(capacity, recordCount));
+        for (int slot = 0; slot < recordCount; slot++) {
+            int offset = offset(slot);
+            index.put(buffer.getLong(offset), buffer.getLong(offset + 8), slot);
+        }
+    }
+
+    private int appendRecord(long msb, long lsb) throws IOException {
+        if (recordCount == capacity) {
+            capacity *= 2;
+            remap();
+        }
+
+        int slot = recordCount++;
+        int offset = offset(slot);
+        buffer.putLong(offset, msb);
+        buffer.putLong(offset + 8, lsb);
+        index.put(msb, lsb, slot);
+        return slot;
+    }
+
+    // Отображение растет вместе с файлом, старый буфер освобождается сборщиком мусора
+    private void remap() throws IOException {
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, headerSize + (long) capacity * recordSize);
+    }
+
+    private int offset(int slot) {
+        return headerSize + slot * recordSize;
+    }
+
+    // Смещение значения статистики внутри записи или -1, если столбца нет
+    private int fieldOffset(int statId) {
+        int column = statId < columnOf.length ? columnOf[statId] : -1;
+        return column < 0 ? -1 : 16 + column * Long.BYTES;
+    }
+
+    private interface ValueSource {
+        long get(int slot, StatType type);
+    }
+
+    private interface UuidSource {
+        long[] get(int slot);
+    }
+
+    // Открытая адресация на примитивных массивах: без объектов UUID и Integer на каждого игрока
+    private static final class SlotIndex {
+        private long[] msbs;
+        private long[] lsbs;
+        private int[] slots;
+        private int size;
+
+        SlotIndex(int expected) {
+            int tableSize = Integer.highestOneBit(Math.max(16, expected * 2 - 1)) << 1;
+            msbs = new long[tableSize];
+            lsbs = new long[tableSize];
+            slots = new int[tableSize];
+            Arrays.fill(slots, -1);
+        }
+
+        int get(long msb, long lsb) {
+            int mask = slots.length - 1;
+            for (int i = hash(msb, lsb) & mask; slots[i] >= 0; i = (i + 1) & mask) {
+                if (msbs[i] == msb && lsbs[i] == lsb) {
+                    return slots[i];
+                }
+            }
+            return -1;
+        }
+
+        void put(long msb, long lsb, int slot) {
+            if ((size + 1) * 2 > slots.length) {
+                resize();
+            }
+
+            int mask = slots.length - 1;
+            int i = hash(msb, lsb) & mask;
+            while (slots[i] >= 0) {
+                if (msbs[i] == msb && lsbs[i] == lsb) {
+                    slots[i] = slot;
+                    return;
+                }
+                i = (i + 1) & mask;
+            }
+            msbs[i] = msb;
+            lsbs[i] = lsb;
+            slots[i] = slot;
+            size++;
+        }
+
+        private void resize() {
+            long[] oldMsbs = msbs;
+            long[] oldLsbs = lsbs;
+            int[] oldSlots = slots;
+
+            msbs = new long[oldSlots.length * 2];
+            lsbs = new long[oldSlots.length * 2];
+            slots = new int[oldSlots.length * 2];
+            Arrays.fill(slots, -1);
+            size = 0;
+
+            for (int i = 0; i < oldSlots.length; i++) {
+                if (oldSlots[i] >= 0) {
+                    put(oldMsbs[i], oldLsbs[i], oldSlots[i]);
+                }
+            }
+        }
+
+        private static int hash(long msb, long lsb) {
+            long h = msb ^ lsb;
+            h ^= h >>> 33;
+            h *= 0xff51afd7ed558ccdL;
+            h ^= h >>> 33;
+            return (int) h;
+        }
+    }
+}
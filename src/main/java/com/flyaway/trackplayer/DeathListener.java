@@ -0,0 +1,20 @@
+package com.flyaway.trackplayer;
+
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.Listener;
+import org.bukkit.event.entity.PlayerDeathEvent;
+
+// Учет смертей; регистрируется только при track-deaths: true
+public class DeathListener implements Listener {
+
+    private final TrackPlayer plugin;
+
+    public DeathListener(TrackPlayer plugin) {
+        this.plugin = plugin;
+    }
+
+    @EventHandler
+    public void onPlayerDeath(PlayerDeathEvent event) {
+        plugin.incrementDeaths(event.getEntity().getUniqueId());
+    }
+}
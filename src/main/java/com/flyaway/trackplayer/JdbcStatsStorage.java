@@ -0,0 +1,271 @@
+package com.flyaway.trackplayer;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.ObjLongConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Общая часть хранилищ в SQL-базе: таблица trackplayer_stats, одна строка на пару игрок/статистика.
+// Чтение идет через отдельное соединение, подклассы задают создание таблицы и запросы записи своего диалекта.
+public abstract class JdbcStatsStorage implements StatsStorage {
+
+    // Общий файл SQLite и старые сборки SQLite ограничивают запрос 999 параметрами
+    private static final int LOAD_BATCH_SIZE = 500;
+
+    protected final StatRegistry registry;
+    protected final Logger logger;
+    // Название базы в сообщениях: "базе данных", "общей базе"
+    private final String label;
+    protected Connection readConnection;
+    protected Connection writeConnection;
+
+    protected JdbcStatsStorage(StatRegistry registry, Logger logger, String label) {
+        this.registry = registry;
+        this.logger = logger;
+        this.label = label;
+    }
+
+    // Ключи статистик, найденные в таблице, регистрируются в реестре
+    protected void registerStoredKeys() throws SQLException {
+        try (Statement statement = readConnection.createStatement();
+             ResultSet result = statement.executeQuery("SELECT DISTINCT stat FROM trackplayer_stats")) {
+            while (result.next()) {
+                String key = result.getString(1);
+                try {
+                    registry.register(key, null);
+                } catch (IllegalArgumentException e) {
+                    logger.warning("Неизвестная статистика в " + label + ": " + key);
+                }
+            }
+        }
+    }
+
+    // Столбцы значения в запросах чтения; readRaw собирает из них сырое значение записи
+    protected String valueColumns() {
+        return "value";
+    }
+
+    protected long readRaw(ResultSet row, int column) throws SQLException {
+        return row.getLong(column);
+    }
+
+    @Override
+    public boolean isEmpty() throws IOException {
+        synchronized (readConnection) {
+            try (Statement statement = readConnection.createStatement();
+                 ResultSet result = statement.executeQuery("SELECT 1 FROM trackplayer_stats LIMIT 1")) {
+                return !result.next();
+            } catch (SQLException e) {
+                throw new IOException(e);
+            }
+        }
+    }
+
+    @Override
+    public int count() throws IOException {
+        synchronized (readConnection) {
+            try (Statement statement = readConnection.createStatement();
+                 ResultSet result = statement.executeQuery("SELECT COUNT(DISTINCT uuid) FROM trackplayer_stats")) {
+                return result.next() ? result.getInt(1) : 0;
+            } catch (SQLException e) {
+                throw new IOException(e);
+            }
+        }
+    }
+
+    @Override
+    public StatsSnapshot load(UUID uuid) throws IOException {
+        synchronized (readConnection) {
+            try (PreparedStatement statement = readConnection.prepareStatement(
+                    "SELECT stat, " + valueColumns() + " FROM trackplayer_stats WHERE uuid = ?")) {
+                statement.setString(1, uuid.toString());
+                try (ResultSet result = statement.executeQuery()) {
+                    StatsSnapshot snapshot = null;
+                    while (result.next()) {
+                        if (snapshot == null) {
+                            snapshot = StatsSnapshot.empty(uuid);
+                        }
+                        StatType type = registry.get(result.getString(1));
+                        if (type != null) {
+                            snapshot = snapshot.with(type, readRaw(result, 2));
+                        }
+                    }
+                    return snapshot;
+                }
+            } catch (SQLException e) {
+                throw new IOException(e);
+            }
+        }
+    }
+
+    // Один запрос на пачку игроков вместо запроса на каждого
+    @Override
+    public Map<UUID, StatsSnapshot> loadAll(Collection<UUID> uuids) throws IOException {
+        Map<UUID, StatsSnapshot> result = new HashMap<>();
+        List<UUID> players = new ArrayList<>(uuids);
+        synchronized (readConnection) {
+            for (int from = 0; from < players.size(); from += LOAD_BATCH_SIZE) {
+                List<UUID> batch = players.subList(from, Math.min(players.size(), from + LOAD_BATCH_SIZE));
+                String sql = "SELECT uuid, stat, " + valueColumns() + " FROM trackplayer_stats WHERE uuid IN (" +
+                        String.join(", ", Collections.nCopies(batch.size(), "?")) + ")";
+                try (PreparedStatement statement = readConnection.prepareStatement(sql)) {
+                    for (int i = 0; i < batch.size(); i++) {
+                        statement.setString(i + 1, batch.get(i).toString());
+                    }
+                    try (ResultSet rows = statement.executeQuery()) {
+                        while (rows.next()) {
+                            UUID uuid = UUID.fromString(rows.getString(1));
+                            StatsSnapshot snapshot = result.computeIfAbsent(uuid, StatsSnapshot::empty);
+                            StatType type = registry.get(rows.getString(2));
+                            if (type != null) {
+                                result.put(uuid, snapshot.with(type, readRaw(rows, 3)));
+                            }
+                        }
+                    }
+                } catch (SQLException e) {
+                    throw new IOException(e);
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void forEachValue(StatType type, ObjLongConsumer<UUID> consumer) throws IOException {
+        synchronized (readConnection) {
+            try (PreparedStatement statement = readConnection.prepareStatement(
+                    "SELECT uuid, " + valueColumns() + " FROM trackplayer_stats WHERE stat = ? AND value > 0")) {
+                statement.setString(1, type.key());
+                try (ResultSet result = statement.executeQuery()) {
+                    while (result.next()) {
+                        String uuidStr = result.getString(1);
+                        try {
+                            consumer.accept(UUID.fromString(uuidStr), readRaw(result, 2));
+                        } catch (IllegalArgumentException e) {
+                            logger.warning("Неверный UUID в " + label + ": " + uuidStr);
+                        }
+                    }
+                }
+            } catch (SQLException e) {
+                throw new IOException(e);
+            }
+        }
+    }
+
+    // Столбец epoch рядом со значением: лучшие значения и места берутся только из текущего сброса
+    protected boolean hasEpochColumn() {
+        return false;
+    }
+
+    // Значения оконных статистик упакованы с номером периода и по индексу не сравниваются
+    @Override
+    public boolean hasRankIndex(StatType type) {
+        return !type.isWindowed();
+    }
+
+    @Override
+    public List<Leaderboard.Entry> top(StatType type, int limit) throws IOException {
+        List<Leaderboard.Entry> result = new ArrayList<>();
+        synchronized (readConnection) {
+            try (PreparedStatement statement = readConnection.prepareStatement(
+                    "SELECT uuid, value FROM trackplayer_stats WHERE stat = ?" + epochFilter() +
+                            " AND value > 0 ORDER BY value DESC LIMIT ?")) {
+                int index = bindStat(statement, type);
+                statement.setInt(index, limit);
+                try (ResultSet rows = statement.executeQuery()) {
+                    while (rows.next()) {
+                        String uuidStr = rows.getString(1);
+                        try {
+                            result.add(new Leaderboard.Entry(UUID.fromString(uuidStr), rows.getLong(2)));
+                        } catch (IllegalArgumentException e) {
+                            logger.warning("Неверный UUID в " + label + ": " + uuidStr);
+                        }
+                    }
+                }
+            } catch (SQLException e) {
+                throw new IOException(e);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public int countAbove(StatType type, long value) throws IOException {
+        synchronized (readConnection) {
+            try (PreparedStatement statement = readConnection.prepareStatement(
+                    "SELECT COUNT(*) FROM trackplayer_stats WHERE stat = ?" + epochFilter() + " AND value > ?")) {
+                int index = bindStat(statement, type);
+                statement.setLong(index, value);
+                try (ResultSet result = statement.executeQuery()) {
+                    return result.next() ? result.getInt(1) : 0;
+                }
+            } catch (SQLException e) {
+                throw new IOException(e);
+            }
+        }
+    }
+
+    private String epochFilter() {
+        return hasEpochColumn() ? " AND epoch = ?" : "";
+    }
+
+    // Возвращает номер следующего параметра запроса
+    private int bindStat(PreparedStatement statement, StatType type) throws SQLException {
+        statement.setString(1, type.key());
+        if (!hasEpochColumn()) {
+            return 2;
+        }
+        statement.setLong(2, type.epoch());
+        return 3;
+    }
+
+    @Override
+    public void resetAll(StatType type) throws IOException {
+        try (PreparedStatement statement = writeConnection.prepareStatement(
+                "UPDATE trackplayer_stats SET value = 0 WHERE stat = ?")) {
+            statement.setString(1, type.key());
+            statement.executeUpdate();
+            writeConnection.commit();
+        } catch (SQLException e) {
+            rollback();
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        closeQuietly(readConnection);
+        closeQuietly(writeConnection);
+    }
+
+    protected void rollback() {
+        try {
+            writeConnection.rollback();
+        } catch (SQLException e) {
+            logger.log(Level.WARNING, "Ошибка отката транзакции", e);
+        }
+    }
+
+    private void closeQuietly(Connection connection) {
+        if (connection == null) {
+            return;
+        }
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            logger.log(Level.WARNING, "Ошибка закрытия соединения с " + label, e);
+        }
+    }
+}
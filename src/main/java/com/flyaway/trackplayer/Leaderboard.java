@@ -0,0 +1,364 @@
+package com.flyaway.trackplayer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+// Рейтинг по одной статистике: декартово дерево с размерами поддеревьев.
+// Обновление, место игрока и поиск N-й позиции выполняются за O(log n).
+// Игроки с нулевым значением в рейтинг не попадают. В памяти лежат не все сохраненные игроки,
+// а лучшие значения из хранилища и загруженные записи: сохраненные игроки вне рейтинга
+// имеют значение не больше floor.
+public class Leaderboard {
+
+    public record Entry(UUID uuid, long value) {
+    }
+
+    private static final class Node {
+        final UUID uuid;
+        final long value;
+        final int priority;
+        int size = 1;
+        Node left;
+        Node right;
+
+        Node(UUID uuid, long value) {
+            this.uuid = uuid;
+            this.value = value;
+            this.priority = ThreadLocalRandom.current().nextInt();
+        }
+    }
+
+    // Явная блокировка вместо synchronized: ожидание основного потока попадает в метрики
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LockMeter meter;
+    private Map<UUID, Node> nodes = new HashMap<>();
+    private Node root;
+    // Растет при каждом изменении рейтинга; пишется под блокировкой, читается без нее
+    private volatile long version;
+    // Long.MAX_VALUE - лучшие значения из хранилища еще не загружены, 0 - в рейтинге все ненулевые значения
+    private long floor = Long.MAX_VALUE;
+
+    public Leaderboard() {
+        this(new LockMeter());
+    }
+
+    public Leaderboard(LockMeter meter) {
+        this.meter = meter;
+    }
+
+    public void update(UUID uuid, long value) {
+        meter.lock(lock);
+        try {
+            put(uuid, value);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Под блокировкой
+    private void put(UUID uuid, long value) {
+        Node current = nodes.get(uuid);
+        if (current != null) {
+            if (current.value == value) {
+                return;
+            }
+            root = delete(root, current.value, uuid);
+            nodes.remove(uuid);
+            version++;
+        }
+
+        if (value > 0) {
+            Node node = new Node(uuid, value);
+            nodes.put(uuid, node);
+            root = insert(root, node);
+            version++;
+        }
+    }
+
+    public void remove(UUID uuid) {
+        meter.lock(lock);
+        try {
+            Node current = nodes.remove(uuid);
+            if (current != null) {
+                root = delete(root, current.value, uuid);
+                version++;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void clear() {
+        meter.lock(lock);
+        try {
+            nodes = new HashMap<>();
+            root = null;
+            // После сброса сохраненные значения нулевые
+            floor = 0;
+            version++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Лучшие сохраненные значения; skip - игроки, чьи значения в рейтинге свежее сохраненных
+    public void seed(List<Entry> entries, long floor, Predicate<UUID> skip) {
+        meter.lock(lock);
+        try {
+            for (Entry entry : entries) {
+                if (!skip.test(entry.uuid())) {
+                    put(entry.uuid(), entry.value());
+                }
+            }
+            this.floor = floor;
+            version++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Убирает игроков ниже позиции keep, кроме retain (загруженные записи); граница floor поднимается
+    // до наибольшего убранного значения
+    public void trim(int keep, Predicate<UUID> retain) {
+        meter.lock(lock);
+        try {
+            if (nodes.size() <= keep) {
+                return;
+            }
+            List<Entry> tail = new ArrayList<>(nodes.size() - keep);
+            collect(root, keep, nodes.size() - keep, tail);
+            for (Entry entry : tail) {
+                if (!retain.test(entry.uuid())) {
+                    root = delete(root, entry.value(), entry.uuid());
+                    nodes.remove(entry.uuid());
+                    if (floor != Long.MAX_VALUE) {
+                        floor = Math.max(floor, entry.value());
+                    }
+                    version++;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Передает содержимое другому рейтингу за O(1) и очищает этот (смена периода оконной статистики)
+    public void moveTo(Leaderboard target) {
+        Map<UUID, Node> movedNodes;
+        Node movedRoot;
+        long movedFloor;
+        meter.lock(lock);
+        try {
+            movedNodes = nodes;
+            movedRoot = root;
+            movedFloor = floor;
+            nodes = new HashMap<>();
+            root = null;
+            // Новый период начинается с нуля у всех игроков
+            floor = 0;
+            version++;
+        } finally {
+            lock.unlock();
+        }
+        target.meter.lock(target.lock);
+        try {
+            target.nodes = movedNodes;
+            target.root = movedRoot;
+            target.floor = movedFloor;
+            target.version++;
+        } finally {
+            target.lock.unlock();
+        }
+    }
+
+    // Номер изменения: одинаковый номер - то же содержимое рейтинга
+    public long version() {
+        return version;
+    }
+
+    public int size() {
+        meter.lock(lock);
+        try {
+            return nodes.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Место игрока начиная с 1, либо 0 если игрока нет в рейтинге
+    public int rank(UUID uuid) {
+        meter.lock(lock);
+        try {
+            Node target = nodes.get(uuid);
+            return target != null ? rank(target) : 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int rank(Node target) {
+        int rank = 1;
+        Node node = root;
+        while (node != null) {
+            int cmp = compare(target.value, target.uuid, node.value, node.uuid);
+            if (cmp < 0) {
+                node = node.left;
+            } else if (cmp > 0) {
+                rank += size(node.left) + 1;
+                node = node.right;
+            } else {
+                return rank + size(node.left);
+            }
+        }
+        return 0;
+    }
+
+    // Место, если оно точное: значение игрока выше floor либо в рейтинге все ненулевые значения
+    // (тогда 0 - игрока нет в рейтинге). -1 - место считает хранилище
+    public int exactRank(UUID uuid) {
+        meter.lock(lock);
+        try {
+            Node target = nodes.get(uuid);
+            if (floor == 0) {
+                return target != null ? rank(target) : 0;
+            }
+            return target != null && target.value > floor ? rank(target) : -1;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getValue(UUID uuid) {
+        meter.lock(lock);
+        try {
+            Node node = nodes.get(uuid);
+            return node != null ? node.value : 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public List<Entry> top(int offset, int limit) {
+        meter.lock(lock);
+        try {
+            List<Entry> result = new ArrayList<>(Math.max(0, Math.min(limit, nodes.size() - offset)));
+            if (offset >= 0 && limit > 0) {
+                collect(root, offset, limit, result);
+            }
+            return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Обход по порядку с пропуском целых поддеревьев по их размеру
+    private static void collect(Node node, int skip, int limit, List<Entry> result) {
+        if (node == null || result.size() >= limit) {
+            return;
+        }
+
+        int leftSize = size(node.left);
+        if (skip < leftSize) {
+            collect(node.left, skip, limit, result);
+        }
+        if (result.size() < limit && skip <= leftSize) {
+            result.add(new Entry(node.uuid, node.value));
+        }
+        if (result.size() < limit) {
+            collect(node.right, Math.max(0, skip - leftSize - 1), limit, result);
+        }
+    }
+
+    // Сначала большие значения, при равенстве - по UUID
+    private static int compare(long valueA, UUID uuidA, long valueB, UUID uuidB) {
+        int cmp = Long.compare(valueB, valueA);
+        return cmp != 0 ? cmp : uuidA.compareTo(uuidB);
+    }
+
+    private static int size(Node node) {
+        return node != null ? node.size : 0;
+    }
+
+    private static void updateSize(Node node) {
+        node.size = 1 + size(node.left) + size(node.right);
+    }
+
+    private static Node insert(Node node, Node inserted) {
+        if (node == null) {
+            return inserted;
+        }
+
+        if (compare(inserted.value, inserted.uuid, node.value, node.uuid) < 0) {
+            node.left = insert(node.left, inserted);
+            if (node.left.priority > node.priority) {
+                node = rotateRight(node);
+            }
+        } else {
+            node.right = insert(node.right, inserted);
+            if (node.right.priority > node.priority) {
+                node = rotateLeft(node);
+            }
+        }
+        updateSize(node);
+        return node;
+    }
+
+    private static Node delete(Node node, long value, UUID uuid) {
+        if (node == null) {
+            return null;
+        }
+
+        int cmp = compare(value, uuid, node.value, node.uuid);
+        if (cmp < 0) {
+            node.left = delete(node.left, value, uuid);
+        } else if (cmp > 0) {
+            node.right = delete(node.right, value, uuid);
+        } else {
+            return merge(node.left, node.right);
+        }
+        updateSize(node);
+        return node;
+    }
+
+    private static Node merge(Node left, Node right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+
+        if (left.priority > right.priority) {
+            left.right = merge(left.right, right);
+            updateSize(left);
+            return left;
+        }
+        right.left = merge(left, right.left);
+        updateSize(right);
+        return right;
+    }
+
+    private static Node rotateRight(Node node) {
+        Node left = node.left;
+        node.left = left.right;
+        left.right = node;
+        updateSize(node);
+        updateSize(left);
+        return left;
+    }
+
+    private static Node rotateLeft(Node node) {
+        Node right = node.right;
+        node.right = right.left;
+        right.left = node;
+        updateSize(node);
+        updateSize(right);
+        return right;
+    }
+}
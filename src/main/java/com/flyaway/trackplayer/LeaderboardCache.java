@@ -0,0 +1,195 @@
+package com.flyaway.trackplayer;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+
+// Снимок рейтингов для плейсхолдеров. Обновляется по таймеру вне основного потока и только для
+// рейтингов, изменившихся с прошлого обновления; запросы плейсхолдеров читают готовые строки.
+public class LeaderboardCache {
+
+    // Готовые строки одного рейтинга на момент version: позиции топа и места игроков,
+    // которые считаются при первом запросе и живут до следующей смены рейтинга
+    private record Board(long version, String[] names, String[] values, Map<UUID, String> ranks) {
+    }
+
+    // Место игрока ниже лучших значений в памяти, посчитанное хранилищем для табло version
+    private record StoredRank(long version, String text) {
+    }
+
+    private final TrackPlayer plugin;
+    // Табло по id статистики
+    private volatile Board[] boards = new Board[0];
+    private volatile int topSize = 10;
+    private volatile String emptyName = "---";
+    private volatile String emptyValue = "0";
+    // Места, посчитанные хранилищем, и запросы на подсчет (игрок -> версия табло) по статистике.
+    // Подсчет ставится в поток записи одной задачей за обновление
+    private final Map<StatType, Map<UUID, StoredRank>> storedRanks = new ConcurrentHashMap<>();
+    private final Map<StatType, Map<UUID, Long>> rankRequests = new ConcurrentHashMap<>();
+
+    public LeaderboardCache(TrackPlayer plugin) {
+        this.plugin = plugin;
+    }
+
+    public void configure(int topSize, String emptyName, String emptyValue) {
+        this.topSize = Math.max(1, topSize);
+        this.emptyName = emptyName;
+        this.emptyValue = emptyValue;
+    }
+
+    public int getTopSize() {
+        return topSize;
+    }
+
+    public void refresh() {
+        List<StatType> stats = plugin.getStatRegistry().getAll();
+        Board[] current = boards;
+        Board[] updated = new Board[stats.size()];
+        int size = topSize;
+        // Пустые рейтинги (например, по редким типам мобов) делят одни пустые строки без обхода игроков
+        String[] empty = new String[size];
+        for (StatType stat : stats) {
+            plugin.trimLeaderboard(stat);
+            Leaderboard leaderboard = plugin.getLeaderboard(stat);
+            long version = leaderboard.version();
+            Board previous = stat.id() < current.length ? current[stat.id()] : null;
+            if (previous != null && previous.version() == version && previous.names().length == size) {
+                updated[stat.id()] = previous;
+                continue;
+            }
+            if (leaderboard.size() > 0) {
+                updated[stat.id()] = buildBoard(leaderboard, version, size);
+            } else {
+                updated[stat.id()] = new Board(version, empty, empty, new ConcurrentHashMap<>());
+            }
+            // Места, которые не запрашивали с прошлого табло, больше не нужны
+            Map<UUID, StoredRank> known = storedRanks.get(stat);
+            if (known != null && previous != null) {
+                known.values().removeIf(rank -> rank.version() < previous.version());
+            }
+        }
+        boards = updated;
+        countStoredRanks();
+    }
+
+    // Места ниже лучших значений в памяти считает поток записи: один проход на все запросы за обновление
+    private void countStoredRanks() {
+        Map<StatType, Map<UUID, Long>> requests = new HashMap<>();
+        for (Map.Entry<StatType, Map<UUID, Long>> entry : rankRequests.entrySet()) {
+            Map<UUID, Long> taken = new HashMap<>();
+            for (UUID uuid : entry.getValue().keySet()) {
+                Long version = entry.getValue().remove(uuid);
+                if (version != null) {
+                    taken.put(uuid, version);
+                }
+            }
+            if (!taken.isEmpty()) {
+                requests.put(entry.getKey(), taken);
+            }
+        }
+        if (requests.isEmpty()) {
+            return;
+        }
+
+        boolean queued = plugin.getDataWriter().offer(() -> {
+            for (Map.Entry<StatType, Map<UUID, Long>> entry : requests.entrySet()) {
+                StatType stat = entry.getKey();
+                Map<UUID, Long> values = new HashMap<>();
+                for (UUID uuid : entry.getValue().keySet()) {
+                    values.put(uuid, plugin.getStat(uuid, stat));
+                }
+                try {
+                    Map<UUID, Integer> ranks = plugin.rankStored(stat, values);
+                    Map<UUID, StoredRank> known = storedRanks.computeIfAbsent(stat, key -> new ConcurrentHashMap<>());
+                    for (Map.Entry<UUID, Integer> rank : ranks.entrySet()) {
+                        known.put(rank.getKey(), new StoredRank(entry.getValue().get(rank.getKey()), String.valueOf(rank.getValue())));
+                    }
+                } catch (IOException e) {
+                    plugin.getLogger().log(Level.WARNING, "Ошибка подсчета мест в рейтинге " + stat.key(), e);
+                }
+            }
+        });
+        // Очередь записи заполнена - запросы останутся до следующего обновления
+        if (!queued) {
+            for (Map.Entry<StatType, Map<UUID, Long>> entry : requests.entrySet()) {
+                Map<UUID, Long> pending = rankRequests.get(entry.getKey());
+                entry.getValue().forEach(pending::putIfAbsent);
+            }
+        }
+    }
+
+    private Board buildBoard(Leaderboard leaderboard, long version, int size) {
+        String[] names = new String[size];
+        String[] values = new String[size];
+
+        // Имена из собственного индекса плагина, без обращений к Bukkit
+        PlayerNames playerNames = plugin.getPlayerNames();
+        List<Leaderboard.Entry> top = leaderboard.top(0, size);
+        for (int i = 0; i < top.size(); i++) {
+            Leaderboard.Entry entry = top.get(i);
+            String name = playerNames.get(entry.uuid());
+            names[i] = name != null ? name : "Unknown";
+            values[i] = String.valueOf(entry.value());
+        }
+        return new Board(version, names, values, new ConcurrentHashMap<>());
+    }
+
+    // Запрос табло включает загрузку лучших значений рейтинга из хранилища
+    private Board board(StatType stat) {
+        plugin.requestLeaderboard(stat);
+        Board[] current = boards;
+        return stat.id() < current.length ? current[stat.id()] : null;
+    }
+
+    // Позиция начиная с 1
+    public String getTopName(StatType stat, int position) {
+        Board board = board(stat);
+        if (board == null || position < 1 || position > board.names().length) {
+            return null;
+        }
+        String name = board.names()[position - 1];
+        return name != null ? name : emptyName;
+    }
+
+    public String getTopValue(StatType stat, int position) {
+        Board board = board(stat);
+        if (board == null || position < 1 || position > board.values().length) {
+            return null;
+        }
+        String value = board.values()[position - 1];
+        return value != null ? value : emptyValue;
+    }
+
+    // Место считается по рейтингу при первом запросе и до смены рейтинга берется из табло
+    public String getRank(StatType stat, UUID uuid) {
+        Board board = board(stat);
+        String rank = board != null ? board.ranks().get(uuid) : null;
+        if (rank != null) {
+            return rank;
+        }
+        int exact = plugin.getLeaderboard(stat).exactRank(uuid);
+        if (exact < 0) {
+            return storedRank(stat, uuid, board != null ? board.version() : -1);
+        }
+        rank = String.valueOf(exact);
+        // Статистика, зарегистрированная после обновления, получит табло при следующем обновлении
+        if (board != null) {
+            board.ranks().put(uuid, rank);
+        }
+        return rank;
+    }
+
+    // Игрок ниже лучших значений в памяти: до подсчета хранилищем возвращается прошлое место
+    private String storedRank(StatType stat, UUID uuid, long version) {
+        StoredRank known = storedRanks.computeIfAbsent(stat, key -> new ConcurrentHashMap<>()).get(uuid);
+        if (known == null || known.version() != version) {
+            rankRequests.computeIfAbsent(stat, key -> new ConcurrentHashMap<>()).put(uuid, version);
+        }
+        return known != null ? known.text() : "0";
+    }
+}
@@ -0,0 +1,44 @@
+package com.flyaway.trackplayer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+// Записи игроков с изменениями, ожидающими переноса в рейтинги. Событие только отмечает бит статистики
+// в записи (PlayerStats.markChanged), а в очередь запись попадает один раз - при переходе из чистой
+// в измененную. Рейтинги раз в тик обновляет глобальный поток - блокировки рейтингов не берутся
+// и память не выделяется при каждом событии.
+public class LeaderboardQueue {
+
+    private static final int STRIPES = 16;
+
+    // Изменившиеся статистики и их значения читаются из записи игрока при переносе
+    public record Update(UUID uuid, TrackPlayer.PlayerStats stats) {
+    }
+
+    private final List<ConcurrentLinkedQueue<Update>> stripes = new ArrayList<>(STRIPES);
+
+    public LeaderboardQueue() {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes.add(new ConcurrentLinkedQueue<>());
+        }
+    }
+
+    // Вызывается, только когда markChanged вернул true
+    public void add(UUID uuid, TrackPlayer.PlayerStats stats) {
+        int hash = uuid.hashCode();
+        stripes.get((hash ^ (hash >>> 16)) & (STRIPES - 1)).add(new Update(uuid, stats));
+    }
+
+    // Глобальный поток: переносит все накопленные изменения
+    public void drain(Consumer<Update> action) {
+        for (ConcurrentLinkedQueue<Update> stripe : stripes) {
+            Update update;
+            while ((update = stripe.poll()) != null) {
+                action.accept(update);
+            }
+        }
+    }
+}
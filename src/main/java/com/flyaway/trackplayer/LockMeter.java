@@ -0,0 +1,30 @@
+package com.flyaway.trackplayer;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Учет ожидания блокировки: свободная блокировка берется через tryLock без обращения к часам,
+// время измеряется только при конкуренции
+public final class LockMeter {
+
+    private final LongAdder contended = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+
+    public void lock(ReentrantLock lock) {
+        if (lock.tryLock()) {
+            return;
+        }
+        long start = System.nanoTime();
+        lock.lock();
+        waitNanos.add(System.nanoTime() - start);
+        contended.increment();
+    }
+
+    public long getContended() {
+        return contended.sum();
+    }
+
+    public long getWaitNanos() {
+        return waitNanos.sum();
+    }
+}
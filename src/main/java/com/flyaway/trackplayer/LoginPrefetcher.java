@@ -0,0 +1,54 @@
+package com.flyaway.trackplayer;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Промежуточное хранилище снимков, загруженных в AsyncPlayerPreLoginEvent.
+// При входе снимок переносится в кэш онлайн игроков; записи неудавшихся входов удаляются по таймауту.
+public class LoginPrefetcher {
+
+    private record Staged(StatsSnapshot snapshot, long expiresAt) {
+    }
+
+    private final Map<UUID, Staged> staging = new ConcurrentHashMap<>();
+    private volatile long timeoutNanos;
+
+    public LoginPrefetcher(long timeoutSeconds) {
+        configure(timeoutSeconds);
+    }
+
+    public void configure(long timeoutSeconds) {
+        this.timeoutNanos = Math.max(1, timeoutSeconds) * 1_000_000_000L;
+    }
+
+    public void stage(UUID uuid, StatsSnapshot snapshot) {
+        staging.put(uuid, new Staged(snapshot != null ? snapshot : StatsSnapshot.empty(uuid),
+                System.nanoTime() + timeoutNanos));
+    }
+
+    // Забирает снимок для входящего игрока или null, если загрузка еще не закончилась
+    public StatsSnapshot take(UUID uuid) {
+        Staged staged = staging.remove(uuid);
+        return staged != null ? staged.snapshot() : null;
+    }
+
+    public void discard(UUID uuid) {
+        staging.remove(uuid);
+    }
+
+    public void clear() {
+        staging.clear();
+    }
+
+    public int purgeExpired() {
+        long now = System.nanoTime();
+        int before = staging.size();
+        staging.values().removeIf(staged -> now - staged.expiresAt() > 0);
+        return before - staging.size();
+    }
+
+    public int size() {
+        return staging.size();
+    }
+}
@@ -0,0 +1,141 @@
+package com.flyaway.trackplayer;
+
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+
+// Метрики в текстовом формате Prometheus: HTTP только на localhost и/или файл в папке плагина
+public class MetricsExporter {
+
+    private final TrackPlayer plugin;
+    private HttpServer server;
+
+    public MetricsExporter(TrackPlayer plugin) {
+        this.plugin = plugin;
+    }
+
+    public void start(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/metrics", exchange -> {
+            byte[] body = render().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream output = exchange.getResponseBody()) {
+                output.write(body);
+            }
+        });
+        server.start();
+    }
+
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+            server = null;
+        }
+    }
+
+    // Файл заменяется целиком, читатель не увидит наполовину записанные метрики
+    public void writeFile(File file) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        Files.writeString(temp.toPath(), render(), StandardCharsets.UTF_8);
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public String render() {
+        PluginMetrics metrics = plugin.getMetrics();
+        StringBuilder out = new StringBuilder(4096);
+
+        header(out, "trackplayer_stat_events_total", "counter", "Изменения статистики по ключу");
+        for (StatType stat : plugin.getStatRegistry().getAll()) {
+            long events = metrics.getEvents(stat);
+            if (events > 0) {
+                out.append("trackplayer_stat_events_total{stat=\"").append(stat.key()).append("\"} ").append(events).append('\n');
+            }
+        }
+
+        header(out, "trackplayer_placeholder_requests_total", "counter", "Запросы плейсхолдеров");
+        sample(out, "trackplayer_placeholder_requests_total", metrics.getPlaceholderRequests());
+        header(out, "trackplayer_placeholder_unknown_total", "counter", "Нераспознанные запросы плейсхолдеров");
+        sample(out, "trackplayer_placeholder_unknown_total", metrics.getPlaceholderUnknown());
+        header(out, "trackplayer_placeholder_requests_per_second", "gauge", "Запросы плейсхолдеров за последнюю секунду");
+        sample(out, "trackplayer_placeholder_requests_per_second", metrics.getPlaceholderRate());
+
+        header(out, "trackplayer_lookups_total", "counter", "Чтения статистики игрока по источнику");
+        for (PluginMetrics.LookupPath path : PluginMetrics.LookupPath.values()) {
+            out.append("trackplayer_lookups_total{path=\"").append(path.key()).append("\"} ")
+                    .append(metrics.getLookups(path)).append('\n');
+        }
+
+        header(out, "trackplayer_lock_wait_seconds_total", "counter", "Время ожидания занятых блокировок");
+        lockWait(out, "leaderboard", metrics.getLeaderboardLocks());
+        lockWait(out, "journal", metrics.getJournalLocks());
+        header(out, "trackplayer_lock_contended_total", "counter", "Захваты блокировок с ожиданием");
+        out.append("trackplayer_lock_contended_total{lock=\"leaderboard\"} ").append(metrics.getLeaderboardLocks().getContended()).append('\n');
+        out.append("trackplayer_lock_contended_total{lock=\"journal\"} ").append(metrics.getJournalLocks().getContended()).append('\n');
+
+        header(out, "trackplayer_flush_duration_seconds", "histogram", "Длительность сохранения в хранилище");
+        long cumulative = 0;
+        for (int i = 0; i < PluginMetrics.FLUSH_BUCKETS_MS.length; i++) {
+            cumulative += metrics.getFlushBucket(i);
+            out.append("trackplayer_flush_duration_seconds_bucket{le=\"")
+                    .append(format(PluginMetrics.FLUSH_BUCKETS_MS[i] / 1000)).append("\"} ").append(cumulative).append('\n');
+        }
+        cumulative += metrics.getFlushBucket(PluginMetrics.FLUSH_BUCKETS_MS.length);
+        out.append("trackplayer_flush_duration_seconds_bucket{le=\"+Inf\"} ").append(cumulative).append('\n');
+        sample(out, "trackplayer_flush_duration_seconds_sum", metrics.getFlushNanos() / 1_000_000_000.0);
+        sample(out, "trackplayer_flush_duration_seconds_count", cumulative);
+
+        PlayerDataWriter writer = plugin.getDataWriter();
+        header(out, "trackplayer_bytes_written_total", "counter", "Записанные байты");
+        out.append("trackplayer_bytes_written_total{target=\"storage\"} ").append(writer.getTotalBytesWritten()).append('\n');
+        StatJournal journal = plugin.getJournal();
+        if (journal != null) {
+            out.append("trackplayer_bytes_written_total{target=\"journal\"} ").append(journal.getCommittedBytes()).append('\n');
+        }
+
+        header(out, "trackplayer_writer_queue_depth", "gauge", "Задачи в очереди потока записи");
+        sample(out, "trackplayer_writer_queue_depth", writer.getQueueSize());
+        header(out, "trackplayer_writer_blocked_submits_total", "counter", "Ожидания при переполненной очереди записи");
+        sample(out, "trackplayer_writer_blocked_submits_total", writer.getBlockedSubmits());
+        header(out, "trackplayer_writer_rejected_offers_total", "counter", "Задачи, отложенные до следующего цикла из-за заполненной очереди");
+        sample(out, "trackplayer_writer_rejected_offers_total", writer.getRejectedOffers());
+
+        header(out, "trackplayer_cached_players", "gauge", "Записи игроков в памяти");
+        sample(out, "trackplayer_cached_players", plugin.getCachedPlayersCount());
+        if (metrics.getStoredPlayers() >= 0) {
+            header(out, "trackplayer_stored_players", "gauge", "Игроки в хранилище");
+            sample(out, "trackplayer_stored_players", metrics.getStoredPlayers());
+        }
+        return out.toString();
+    }
+
+    private static void header(StringBuilder out, String name, String type, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(StringBuilder out, String name, long value) {
+        out.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void sample(StringBuilder out, String name, double value) {
+        out.append(name).append(' ').append(format(value)).append('\n');
+    }
+
+    private static void lockWait(StringBuilder out, String lock, LockMeter meter) {
+        out.append("trackplayer_lock_wait_seconds_total{lock=\"").append(lock).append("\"} ")
+                .append(format(meter.getWaitNanos() / 1_000_000_000.0)).append('\n');
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.6f", value);
+    }
+}
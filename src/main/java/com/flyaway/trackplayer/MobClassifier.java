@@ -0,0 +1,120 @@
+package com.flyaway.trackplayer;
+
+import org.bukkit.World;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.entity.EntityType;
+
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+// Неизменяемый классификатор враждебных мобов: таблица по ordinal типа сущности,
+// собирается из config.yml при загрузке и перезагрузке, в обработчике событий только чтение массива.
+public final class MobClassifier {
+
+    public static final Set<EntityType> DEFAULT_HOSTILE = EnumSet.of(
+            EntityType.ZOMBIE, EntityType.DROWNED, EntityType.HUSK, EntityType.ZOMBIFIED_PIGLIN, EntityType.ZOGLIN,
+            EntityType.SKELETON, EntityType.STRAY, EntityType.WITHER_SKELETON, EntityType.PHANTOM, EntityType.SPIDER,
+            EntityType.CAVE_SPIDER, EntityType.SILVERFISH, EntityType.ENDERMITE, EntityType.CREEPER, EntityType.ENDERMAN,
+            EntityType.WITCH, EntityType.BLAZE, EntityType.GHAST, EntityType.MAGMA_CUBE, EntityType.SLIME,
+            EntityType.GUARDIAN, EntityType.ELDER_GUARDIAN, EntityType.SHULKER, EntityType.VEX, EntityType.VINDICATOR,
+            EntityType.EVOKER, EntityType.ILLUSIONER, EntityType.PILLAGER, EntityType.RAVAGER, EntityType.HOGLIN,
+            EntityType.PIGLIN_BRUTE, EntityType.WARDEN, EntityType.BREEZE, EntityType.ENDER_DRAGON, EntityType.WITHER,
+            EntityType.PIGLIN);
+
+    private final boolean[] hostile;
+    // Переопределения по миру; пустая карта - поиск мира не выполняется вовсе
+    private final Map<String, boolean[]> worldOverrides;
+
+    private MobClassifier(boolean[] hostile, Map<String, boolean[]> worldOverrides) {
+        this.hostile = hostile;
+        this.worldOverrides = worldOverrides;
+    }
+
+    public static MobClassifier load(ConfigurationSection config, Logger logger) {
+        boolean[] hostile = new boolean[EntityType.values().length];
+        for (EntityType type : DEFAULT_HOSTILE) {
+            hostile[type.ordinal()] = true;
+        }
+
+        Map<String, boolean[]> worldOverrides = new HashMap<>();
+        if (config != null) {
+            apply(hostile, config, logger);
+
+            ConfigurationSection worlds = config.getConfigurationSection("worlds");
+            if (worlds != null) {
+                for (String world : worlds.getKeys(false)) {
+                    boolean[] worldHostile = hostile.clone();
+                    apply(worldHostile, worlds.getConfigurationSection(world), logger);
+                    worldOverrides.put(world, worldHostile);
+                }
+            }
+        }
+        return new MobClassifier(hostile, Map.copyOf(worldOverrides));
+    }
+
+    private static void apply(boolean[] hostile, ConfigurationSection section, Logger logger) {
+        if (section == null) {
+            return;
+        }
+        for (EntityType type : parseTypes(section.getStringList("include"), logger)) {
+            hostile[type.ordinal()] = true;
+        }
+        for (EntityType type : parseTypes(section.getStringList("exclude"), logger)) {
+            hostile[type.ordinal()] = false;
+        }
+    }
+
+    private static Set<EntityType> parseTypes(List<String> names, Logger logger) {
+        Set<EntityType> types = EnumSet.noneOf(EntityType.class);
+        for (String name : names) {
+            try {
+                types.add(EntityType.valueOf(name.trim().toUpperCase(Locale.ROOT)));
+            } catch (IllegalArgumentException e) {
+                logger.warning("Неизвестный тип моба в настройках hostile-mobs: " + name);
+            }
+        }
+        return types;
+    }
+
+    public boolean isHostile(EntityType type, World world) {
+        if (!worldOverrides.isEmpty() && world != null) {
+            boolean[] worldHostile = worldOverrides.get(world.getName());
+            if (worldHostile != null) {
+                return worldHostile[type.ordinal()];
+            }
+        }
+        return hostile[type.ordinal()];
+    }
+
+    // Типы, враждебные хотя бы в одном мире
+    public Set<EntityType> getTrackedTypes() {
+        Set<EntityType> types = EnumSet.noneOf(EntityType.class);
+        EntityType[] values = EntityType.values();
+        for (int ordinal = 0; ordinal < values.length; ordinal++) {
+            if (hostile[ordinal]) {
+                types.add(values[ordinal]);
+            }
+            for (boolean[] worldHostile : worldOverrides.values()) {
+                if (worldHostile[ordinal]) {
+                    types.add(values[ordinal]);
+                }
+            }
+        }
+        return types;
+    }
+
+    public int getHostileCount() {
+        int count = 0;
+        for (boolean value : hostile) {
+            if (value) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
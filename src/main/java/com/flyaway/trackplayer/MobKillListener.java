@@ -0,0 +1,30 @@
+package com.flyaway.trackplayer;
+
+import org.bukkit.entity.EntityType;
+import org.bukkit.entity.LivingEntity;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.Listener;
+import org.bukkit.event.entity.EntityDeathEvent;
+
+// Учет убийств враждебных мобов; регистрируется только при track-mob-kills: true
+public class MobKillListener implements Listener {
+
+    private final TrackPlayer plugin;
+
+    public MobKillListener(TrackPlayer plugin) {
+        this.plugin = plugin;
+    }
+
+    @EventHandler
+    public void onEntityDeath(EntityDeathEvent event) {
+        LivingEntity entity = event.getEntity();
+        Player killer = entity.getKiller();
+
+        if (killer != null && event.getEntityType() != EntityType.PLAYER) {
+            if (plugin.getMobClassifier().isHostile(event.getEntityType(), entity.getWorld())) {
+                plugin.incrementMobKill(killer.getUniqueId(), event.getEntityType());
+            }
+        }
+    }
+}
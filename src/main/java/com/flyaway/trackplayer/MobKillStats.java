@@ -0,0 +1,57 @@
+package com.flyaway.trackplayer;
+
+import org.bukkit.entity.EntityType;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+// Статистики убийств по типам мобов (mob_kills_<тип>). Таблица по ordinal типа сущности
+// ссылается на зарегистрированные статистики, сами значения лежат в массиве записи игрока по id статистики.
+public final class MobKillStats {
+
+    public static final String KEY_PREFIX = "mob_kills_";
+    // Ключи всех типов сущностей: оконные статистики mob_kills (mob_kills_daily и т.д.) тоже начинаются
+    // с KEY_PREFIX, поэтому статистика типа моба определяется по ключу целиком, а не по префиксу
+    private static final Map<String, EntityType> TYPES_BY_KEY = new HashMap<>();
+
+    static {
+        for (EntityType type : EntityType.values()) {
+            TYPES_BY_KEY.put(key(type), type);
+        }
+    }
+
+    private final StatRegistry registry;
+    // Гонка при ленивом заполнении безопасна: регистрация по ключу идемпотентна
+    private final StatType[] byOrdinal = new StatType[EntityType.values().length];
+
+    public MobKillStats(StatRegistry registry) {
+        this.registry = registry;
+    }
+
+    public static String key(EntityType type) {
+        return KEY_PREFIX + type.name().toLowerCase(Locale.ROOT);
+    }
+
+    // Статистика убийств одного типа моба; ее оконные статистики сюда не относятся
+    public static boolean isMobKillStat(StatType stat) {
+        return !stat.isWindowed() && TYPES_BY_KEY.containsKey(stat.key());
+    }
+
+    // Регистрирует статистики заранее, чтобы плейсхолдеры отвечали нулем еще до первого убийства
+    public void registerAll(Collection<EntityType> types) {
+        for (EntityType type : types) {
+            get(type);
+        }
+    }
+
+    public StatType get(EntityType type) {
+        StatType stat = byOrdinal[type.ordinal()];
+        if (stat == null) {
+            stat = registry.register(key(type), "Убийств мобов (" + type.name().toLowerCase(Locale.ROOT) + ")");
+            byOrdinal[type.ordinal()] = stat;
+        }
+        return stat;
+    }
+}
@@ -0,0 +1,338 @@
+package com.flyaway.trackplayer;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+// Общее хранилище для нескольких серверов за прокси (MySQL/MariaDB или общий файл SQLite).
+// Сервер не перезаписывает абсолютные значения: изменения копятся в локальном буфере приращений
+// и сливаются в базу коммутативными запросами value = value + ?, поэтому серверы не затирают друг друга.
+// Снимки, переданные в save(), служат только сигналом сбросить буфер.
+public class NetworkStatsStorage extends JdbcStatsStorage {
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final boolean mysql;
+    // Несохраненные приращения по игрокам; для оконных статистик - упакованные (период, приращение)
+    private final Map<UUID, DeltaRecord> deltas = new ConcurrentHashMap<>();
+    // Увеличивается при каждом сбросе буфера: обновление онлайн значений применяется, только если сброса не было
+    private final AtomicLong drainCount = new AtomicLong();
+
+    public NetworkStatsStorage(String url, String user, String password, StatRegistry registry, Logger logger) {
+        super(registry, logger, "общей базе");
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.mysql = url.startsWith("jdbc:mysql:") || url.startsWith("jdbc:mariadb:");
+    }
+
+    @Override
+    public String getName() {
+        return "network";
+    }
+
+    @Override
+    public void open() throws IOException {
+        try {
+            writeConnection = connect();
+            try (Statement statement = writeConnection.createStatement()) {
+                if (mysql) {
+                    statement.execute("CREATE TABLE IF NOT EXISTS trackplayer_stats (" +
+                            "uuid CHAR(36) NOT NULL, " +
+                            "stat VARCHAR(64) NOT NULL, " +
+                            "value BIGINT NOT NULL DEFAULT 0, " +
+                            "PRIMARY KEY (uuid, stat), " +
+                            "INDEX trackplayer_stats_rank (stat, value))");
+                } else {
+                    statement.execute("PRAGMA journal_mode=WAL");
+                    statement.execute("PRAGMA busy_timeout=5000");
+                    statement.execute("CREATE TABLE IF NOT EXISTS trackplayer_stats (" +
+                            "uuid CHAR(36) NOT NULL, " +
+                            "stat VARCHAR(64) NOT NULL, " +
+                            "value BIGINT NOT NULL DEFAULT 0, " +
+                            "PRIMARY KEY (uuid, stat))");
+                    statement.execute("CREATE INDEX IF NOT EXISTS trackplayer_stats_rank " +
+                            "ON trackplayer_stats (stat, value DESC)");
+                }
+                // Серверы, уже перенесшие свой playerdata.yml
+                statement.execute("CREATE TABLE IF NOT EXISTS trackplayer_imports (" +
+                        "server_id VARCHAR(64) NOT NULL PRIMARY KEY, " +
+                        "players INT NOT NULL, " +
+                        "imported_at BIGINT NOT NULL)");
+            }
+            writeConnection.setAutoCommit(false);
+            readConnection = connect();
+            registerStoredKeys();
+        } catch (SQLException e) {
+            throw new IOException("Не удалось подключиться к общей базе " + url, e);
+        }
+    }
+
+    private Connection connect() throws SQLException {
+        return user.isEmpty() ? DriverManager.getConnection(url) : DriverManager.getConnection(url, user, password);
+    }
+
+    // Буфер приращений одного игрока. Писатель без блокировки ключа отмечается в счетчике writers;
+    // сброс удаляет пустую запись, только закрыв ее (RETIRED), пока писателей нет
+    private static final class DeltaRecord {
+        private static final int RETIRED = -1;
+
+        private final TrackPlayer.PlayerStats stats = TrackPlayer.PlayerStats.unloaded();
+        private final AtomicInteger writers = new AtomicInteger();
+
+        private boolean enter() {
+            while (true) {
+                int current = writers.get();
+                if (current == RETIRED) {
+                    return false;
+                }
+                if (writers.compareAndSet(current, current + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        private void exit() {
+            writers.decrementAndGet();
+        }
+    }
+
+    // Основной поток: приращение статистики и корзин ее окон. Запись игрока уже в буфере почти всегда,
+    // и тогда приращение обходится без блокировки ключа и без выделения памяти
+    public void recordDelta(UUID uuid, StatType stat, long delta, WindowClock clock) {
+        DeltaRecord record = deltas.get(uuid);
+        if (record != null && record.enter()) {
+            try {
+                add(record.stats, stat, delta, clock);
+            } finally {
+                record.exit();
+            }
+            return;
+        }
+        // Записи нет или сброс ее удалил: compute держит блокировку ключа, а сброс закрывает запись только под ней
+        deltas.compute(uuid, (id, current) -> {
+            DeltaRecord target = current != null ? current : new DeltaRecord();
+            add(target.stats, stat, delta, clock);
+            return target;
+        });
+    }
+
+    private static void add(TrackPlayer.PlayerStats target, StatType stat, long delta, WindowClock clock) {
+        target.add(stat, delta);
+        for (StatType window : stat.windows()) {
+            target.addWindowed(window, clock.period(window.window()), delta);
+        }
+    }
+
+    // Еще не слитые в базу приращения игрока или null
+    public StatsSnapshot pendingDelta(UUID uuid) {
+        DeltaRecord record = deltas.get(uuid);
+        return record != null ? record.stats.peek(uuid) : null;
+    }
+
+    public long getDrainCount() {
+        return drainCount.get();
+    }
+
+    public int getBufferedPlayers() {
+        return deltas.size();
+    }
+
+    // Абсолютные значения снимков не пишутся: в базу уходят только накопленные приращения
+    @Override
+    public long save(Collection<StatsSnapshot> snapshots) throws IOException {
+        return drain();
+    }
+
+    // Поток записи: сливает буфер приращений в базу одной транзакцией
+    public long drain() throws IOException {
+        drainCount.incrementAndGet();
+        List<StatsSnapshot> drained = new ArrayList<>();
+        for (Map.Entry<UUID, DeltaRecord> entry : deltas.entrySet()) {
+            StatsSnapshot snapshot = entry.getValue().stats.drain(entry.getKey());
+            if (snapshot.trimmed().size() > 0) {
+                drained.add(snapshot);
+            }
+            // Пустая запись удаляется под блокировкой ключа и только закрытой: писатель, который не успел
+            // в нее войти, уйдет в compute и создаст новую
+            deltas.computeIfPresent(entry.getKey(), (id, record) -> {
+                if (!record.writers.compareAndSet(0, DeltaRecord.RETIRED)) {
+                    return record;
+                }
+                if (record.stats.isEmpty()) {
+                    return null;
+                }
+                record.writers.set(0);
+                return record;
+            });
+        }
+        if (drained.isEmpty()) {
+            return 0;
+        }
+
+        try {
+            long bytes = apply(drained);
+            writeConnection.commit();
+            return bytes;
+        } catch (SQLException e) {
+            rollback();
+            // Приращения возвращаются в буфер и уйдут со следующим сбросом
+            for (StatsSnapshot snapshot : drained) {
+                deltas.compute(snapshot.uuid(), (id, record) -> {
+                    DeltaRecord target = record != null ? record : new DeltaRecord();
+                    target.stats.mergeDeltas(snapshot, registry);
+                    return target;
+                });
+            }
+            throw new IOException(e);
+        }
+    }
+
+    // Однократный перенос локальных данных сервера: приращения и отметка о переносе фиксируются одной транзакцией,
+    // поэтому данные каждого сервера попадают в базу ровно один раз, что бы в ней уже ни лежало.
+    // false, если этот сервер уже переносил данные
+    public boolean importOnce(String serverId, List<StatsSnapshot> deltas) throws IOException {
+        try {
+            try (PreparedStatement check = writeConnection.prepareStatement(
+                    "SELECT 1 FROM trackplayer_imports WHERE server_id = ?")) {
+                check.setString(1, serverId);
+                try (ResultSet result = check.executeQuery()) {
+                    if (result.next()) {
+                        writeConnection.rollback();
+                        return false;
+                    }
+                }
+            }
+            // Отметка вставляется первой: повторный перенос с тем же id упадет на первичном ключе до приращений
+            try (PreparedStatement mark = writeConnection.prepareStatement(
+                    "INSERT INTO trackplayer_imports (server_id, players, imported_at) VALUES (?, ?, ?)")) {
+                mark.setString(1, serverId);
+                mark.setInt(2, deltas.size());
+                mark.setLong(3, System.currentTimeMillis());
+                mark.executeUpdate();
+            }
+            apply(deltas);
+            writeConnection.commit();
+            return true;
+        } catch (SQLException e) {
+            rollback();
+            throw new IOException(e);
+        }
+    }
+
+    private long apply(List<StatsSnapshot> drained) throws SQLException {
+        long bytes = 0;
+        try (PreparedStatement add = writeConnection.prepareStatement(addSql());
+             PreparedStatement remainder = writeConnection.prepareStatement(windowSql());
+             PreparedStatement rollOver = writeConnection.prepareStatement(rollOverSql());
+             PreparedStatement window = writeConnection.prepareStatement(windowSql())) {
+            for (StatsSnapshot snapshot : drained) {
+                String uuid = snapshot.uuid().toString();
+                for (int id = 0; id < snapshot.size(); id++) {
+                    StatType type = registry.byId(id);
+                    if (type == null || type.isPrevious()) {
+                        // Корзина прошлого периода обрабатывается вместе с текущей
+                        continue;
+                    }
+
+                    long value = snapshot.get(id);
+                    if (!type.isWindowed()) {
+                        if (value != 0) {
+                            bytes += uuid.length() + type.key().getBytes(StandardCharsets.UTF_8).length + Long.BYTES;
+                            add.setString(1, uuid);
+                            add.setString(2, type.key());
+                            add.setLong(3, value);
+                            add.addBatch();
+                        }
+                        continue;
+                    }
+
+                    // Приращение прошлого периода, не успевшее уйти до его смены, сливается в текущую корзину
+                    // со своим номером периода и принимается, только если в базе этот период еще не сменился
+                    long previous = snapshot.get(type.counterpart().id());
+                    if (previous != 0) {
+                        bytes += uuid.length() + type.key().getBytes(StandardCharsets.UTF_8).length + Long.BYTES;
+                        bindWindow(remainder, uuid, type, previous);
+                    }
+                    if (value != 0) {
+                        bytes += uuid.length() + type.key().getBytes(StandardCharsets.UTF_8).length + Long.BYTES;
+                        // Корзина в базе с более старым периодом сначала переносится в корзину прошлого периода
+                        rollOver.setString(1, type.counterpart().key());
+                        rollOver.setString(2, uuid);
+                        rollOver.setString(3, type.key());
+                        rollOver.setLong(4, WindowClock.tag(value));
+                        rollOver.addBatch();
+                        bindWindow(window, uuid, type, value);
+                    }
+                }
+            }
+            // Порядок важен: остаток старого периода, перенос корзины, затем новый период
+            remainder.executeBatch();
+            rollOver.executeBatch();
+            window.executeBatch();
+            add.executeBatch();
+        }
+        return bytes;
+    }
+
+    private static void bindWindow(PreparedStatement statement, String uuid, StatType type, long packed) throws SQLException {
+        statement.setString(1, uuid);
+        statement.setString(2, type.key());
+        statement.setLong(3, packed);
+        statement.addBatch();
+    }
+
+    private String addSql() {
+        return mysql
+                ? "INSERT INTO trackplayer_stats (uuid, stat, value) VALUES (?, ?, ?) " +
+                "ON DUPLICATE KEY UPDATE value = value + VALUES(value)"
+                : "INSERT INTO trackplayer_stats (uuid, stat, value) VALUES (?, ?, ?) " +
+                "ON CONFLICT(uuid, stat) DO UPDATE SET value = value + excluded.value";
+    }
+
+    // Тот же период - сложение, более новый период - замена, более старый - отбрасывается
+    private String windowSql() {
+        String incoming = mysql ? "VALUES(value)" : "excluded.value";
+        String update = "value = CASE " +
+                "WHEN (value >> 40) = (" + incoming + " >> 40) THEN value + (" + incoming + " & 1099511627775) " +
+                "WHEN (value >> 40) < (" + incoming + " >> 40) THEN " + incoming + " " +
+                "ELSE value END";
+        return mysql
+                ? "INSERT INTO trackplayer_stats (uuid, stat, value) VALUES (?, ?, ?) ON DUPLICATE KEY UPDATE " + update
+                : "INSERT INTO trackplayer_stats (uuid, stat, value) VALUES (?, ?, ?) " +
+                "ON CONFLICT(uuid, stat) DO UPDATE SET " + update;
+    }
+
+    private String rollOverSql() {
+        String select = "INSERT INTO trackplayer_stats (uuid, stat, value) " +
+                "SELECT uuid, ?, value FROM trackplayer_stats WHERE uuid = ? AND stat = ? AND (value >> 40) < ? ";
+        return mysql
+                ? select + "ON DUPLICATE KEY UPDATE value = VALUES(value)"
+                : select + "ON CONFLICT(uuid, stat) DO UPDATE SET value = excluded.value";
+    }
+
+    @Override
+    public void resetAll(StatType type) throws IOException {
+        drainCount.incrementAndGet();
+        // Приращения, накопленные до сброса, не должны вернуть старые значения
+        for (DeltaRecord record : deltas.values()) {
+            record.stats.set(type, 0);
+        }
+        super.resetAll(type);
+    }
+}
@@ -0,0 +1,114 @@
+package com.flyaway.trackplayer;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+
+// Ограниченный по размеру LRU-кэш снимков офлайн игроков с истечением срока жизни.
+// Отсутствующие в хранилище игроки тоже кэшируются (пустым снимком), чтобы не ходить в хранилище повторно.
+public class OfflineStatsCache {
+
+    private record CachedEntry(StatsSnapshot snapshot, long loadedAt) {
+    }
+
+    private final LinkedHashMap<UUID, CachedEntry> entries;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    private volatile int maxSize;
+    private volatile long expireNanos;
+
+    public OfflineStatsCache(int maxSize, long expireSeconds) {
+        configure(maxSize, expireSeconds);
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<UUID, CachedEntry> eldest) {
+                if (size() > OfflineStatsCache.this.maxSize) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public void configure(int maxSize, long expireSeconds) {
+        this.maxSize = Math.max(0, maxSize);
+        this.expireNanos = Math.max(1, expireSeconds) * 1_000_000_000L;
+    }
+
+    // Снимок из кэша или null при промахе
+    public StatsSnapshot get(UUID uuid) {
+        long now = System.nanoTime();
+        synchronized (entries) {
+            CachedEntry entry = entries.get(uuid);
+            if (entry != null) {
+                if (now - entry.loadedAt() < expireNanos) {
+                    hits.increment();
+                    return entry.snapshot();
+                }
+                entries.remove(uuid);
+                expirations.increment();
+            }
+        }
+        misses.increment();
+        return null;
+    }
+
+    public void put(UUID uuid, StatsSnapshot snapshot) {
+        if (maxSize == 0) {
+            return;
+        }
+        CachedEntry entry = new CachedEntry(snapshot != null ? snapshot : StatsSnapshot.empty(uuid), System.nanoTime());
+        synchronized (entries) {
+            entries.put(uuid, entry);
+        }
+    }
+
+    // Не заменяет уже лежащий снимок: он мог появиться позже, чем начали читать хранилище
+    public void putIfAbsent(UUID uuid, StatsSnapshot snapshot) {
+        if (maxSize == 0) {
+            return;
+        }
+        CachedEntry entry = new CachedEntry(snapshot != null ? snapshot : StatsSnapshot.empty(uuid), System.nanoTime());
+        synchronized (entries) {
+            entries.putIfAbsent(uuid, entry);
+        }
+    }
+
+    public void invalidate(UUID uuid) {
+        synchronized (entries) {
+            entries.remove(uuid);
+        }
+    }
+
+    public void invalidateAll() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public long getExpirations() {
+        return expirations.sum();
+    }
+}
@@ -0,0 +1,142 @@
+package com.flyaway.trackplayer;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// Отдельный поток записи данных: все обращения хранилища к диску выполняются здесь.
+// Основной поток и таймеры ставят задачи через offer: при заполненной очереди задача не ждет места,
+// а повторяется в следующем цикле. submit с ожиданием - только для загрузки и остановки плагина
+public class PlayerDataWriter {
+
+    private final Logger logger;
+    private final ThreadPoolExecutor executor;
+
+    private volatile long lastFlushNanos;
+    private volatile long lastFlushBytes;
+    private volatile long totalBytesWritten;
+    private volatile long flushCount;
+    // Увеличивается из любых потоков, поставивших задачу в заполненную очередь
+    private final LongAdder blockedSubmits = new LongAdder();
+    private final LongAdder rejectedOffers = new LongAdder();
+
+    public PlayerDataWriter(Logger logger, int queueSize) {
+        this.logger = logger;
+        this.executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueSize)),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "TrackPlayer-Writer");
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                (task, pool) -> {
+                    // Очередь заполнена - вызывающий поток ждет свободного места
+                    if (pool.isShutdown()) {
+                        throw new RejectedExecutionException("Поток записи уже остановлен");
+                    }
+                    blockedSubmits.increment();
+                    try {
+                        pool.getQueue().put(task);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new RejectedExecutionException(e);
+                    }
+                });
+        // offer кладет задачи прямо в очередь, поэтому поток записи должен существовать заранее
+        executor.prestartAllCoreThreads();
+    }
+
+    // Ждет места в очереди, если она заполнена
+    public void submit(Runnable task) {
+        executor.execute(wrap(task));
+    }
+
+    // Без ожидания: false, если очередь заполнена или поток записи остановлен
+    public boolean offer(Runnable task) {
+        Runnable wrapped = wrap(task);
+        if (!executor.isShutdown() && executor.getQueue().offer(wrapped)) {
+            // Остановка между проверкой и постановкой: задачу мог уже не застать поток записи
+            if (!executor.isShutdown() || !executor.remove(wrapped)) {
+                return true;
+            }
+        }
+        rejectedOffers.increment();
+        return false;
+    }
+
+    private Runnable wrap(Runnable task) {
+        return () -> {
+            try {
+                task.run();
+            } catch (Throwable t) {
+                logger.log(Level.SEVERE, "Ошибка в потоке записи данных", t);
+            }
+        };
+    }
+
+    // Вызывается из потока записи после каждого сохранения в хранилище
+    public void recordFlush(long durationNanos, long bytes) {
+        lastFlushNanos = durationNanos;
+        lastFlushBytes = bytes;
+        totalBytesWritten += bytes;
+        flushCount++;
+    }
+
+    // Ждет выполнения всех поставленных до этого задач; false, если не дождался
+    public boolean awaitIdle(long timeoutSeconds) {
+        CountDownLatch latch = new CountDownLatch(1);
+        submit(latch::countDown);
+        try {
+            return latch.await(timeoutSeconds, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    public void shutdown(long timeoutSeconds) {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(timeoutSeconds, TimeUnit.SECONDS)) {
+                logger.severe("Поток записи не завершился за " + timeoutSeconds + " сек, в очереди осталось задач: " +
+                        executor.getQueue().size());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public int getQueueSize() {
+        return executor.getQueue().size();
+    }
+
+    public long getBlockedSubmits() {
+        return blockedSubmits.sum();
+    }
+
+    // Задачи, отложенные до следующего цикла из-за заполненной очереди
+    public long getRejectedOffers() {
+        return rejectedOffers.sum();
+    }
+
+    public double getLastFlushMillis() {
+        return lastFlushNanos / 1_000_000.0;
+    }
+
+    public long getLastFlushBytes() {
+        return lastFlushBytes;
+    }
+
+    public long getTotalBytesWritten() {
+        return totalBytesWritten;
+    }
+
+    public long getFlushCount() {
+        return flushCount;
+    }
+}
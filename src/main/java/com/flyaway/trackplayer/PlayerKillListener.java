@@ -0,0 +1,24 @@
+package com.flyaway.trackplayer;
+
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.Listener;
+import org.bukkit.event.entity.PlayerDeathEvent;
+
+// Учет убийств игроков; регистрируется только при track-player-kills: true
+public class PlayerKillListener implements Listener {
+
+    private final TrackPlayer plugin;
+
+    public PlayerKillListener(TrackPlayer plugin) {
+        this.plugin = plugin;
+    }
+
+    @EventHandler
+    public void onPlayerDeath(PlayerDeathEvent event) {
+        Player killer = event.getEntity().getKiller();
+        if (killer != null) {
+            plugin.incrementPlayerKills(killer.getUniqueId());
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package com.flyaway.trackplayer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.logging.Logger;
+
+// Последние известные имена игроков: рейтинги и списки показывают имена без обращения к Bukkit,
+// а команды находят офлайн игрока по имени без обхода. Файл только дописывается записями
+// (UUID, имя) и переписывается целиком при загрузке, если устаревших записей стало много.
+public class PlayerNames {
+
+    private final File file;
+    private final Logger logger;
+    private final Map<UUID, String> names = new ConcurrentHashMap<>();
+    // Имя в нижнем регистре -> UUID последнего игрока с этим именем
+    private final Map<String, UUID> byName = new ConcurrentHashMap<>();
+    // Игроки, чьи имена еще не дописаны в файл
+    private final Queue<UUID> pending = new ConcurrentLinkedQueue<>();
+
+    // Состояние потока записи: записей в файле, включая устаревшие
+    private int fileRecords;
+
+    public PlayerNames(File file, Logger logger) {
+        this.file = file;
+        this.logger = logger;
+    }
+
+    // Поток записи, при запуске; false, если файла еще нет
+    public boolean load() throws IOException {
+        if (!file.exists()) {
+            return false;
+        }
+        // Порядок - по последнему изменению, чтобы имя, перешедшее к другому игроку, указывало на него
+        Map<UUID, String> stored = new LinkedHashMap<>();
+        boolean truncated = false;
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            while (input.available() > 0) {
+                try {
+                    UUID uuid = new UUID(input.readLong(), input.readLong());
+                    String name = input.readUTF();
+                    stored.remove(uuid);
+                    stored.put(uuid, name);
+                    fileRecords++;
+                } catch (EOFException e) {
+                    // Запись, оборванная при сбое: новые записи нельзя дописывать после нее
+                    logger.warning("Файл имен игроков " + file.getName() + " обрывается, последняя запись отброшена");
+                    truncated = true;
+                    break;
+                }
+            }
+        }
+
+        // Имена игроков, зашедших во время загрузки, свежее файла
+        for (Map.Entry<UUID, String> entry : stored.entrySet()) {
+            if (names.putIfAbsent(entry.getKey(), entry.getValue()) == null) {
+                byName.put(entry.getValue().toLowerCase(Locale.ROOT), entry.getKey());
+            }
+        }
+
+        if (truncated || fileRecords > names.size() * 2 + 1024) {
+            rewrite();
+        }
+        return true;
+    }
+
+    // Поток входа игрока: запоминает имя, если оно изменилось
+    public void update(UUID uuid, String name) {
+        String previous = names.put(uuid, name);
+        if (name.equals(previous)) {
+            return;
+        }
+        if (previous != null) {
+            byName.remove(previous.toLowerCase(Locale.ROOT), uuid);
+        }
+        byName.put(name.toLowerCase(Locale.ROOT), uuid);
+        pending.add(uuid);
+    }
+
+    // Последнее известное имя или null
+    public String get(UUID uuid) {
+        return names.get(uuid);
+    }
+
+    // Игрок с этим именем без учета регистра или null
+    public UUID find(String name) {
+        return byName.get(name.toLowerCase(Locale.ROOT));
+    }
+
+    public int size() {
+        return names.size();
+    }
+
+    public boolean hasPending() {
+        return !pending.isEmpty();
+    }
+
+    // Поток записи: дописывает изменившиеся имена одной записью в конец файла
+    public void flush() throws IOException {
+        List<UUID> batch = new ArrayList<>();
+        UUID polled;
+        while ((polled = pending.poll()) != null) {
+            batch.add(polled);
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)))) {
+            for (UUID uuid : batch) {
+                write(output, uuid, names.get(uuid));
+            }
+        } catch (IOException e) {
+            // Имена останутся в очереди до следующей попытки
+            pending.addAll(batch);
+            throw e;
+        }
+        fileRecords += batch.size();
+    }
+
+    // Файл без устаревших записей заменяется целиком
+    private void rewrite() throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        int records = 0;
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            for (Map.Entry<UUID, String> entry : names.entrySet()) {
+                write(output, entry.getKey(), entry.getValue());
+                records++;
+            }
+        }
+        try {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        logger.info("Файл имен игроков " + file.getName() + " переписан: " + fileRecords + " -> " + records + " записей");
+        fileRecords = records;
+    }
+
+    private static void write(DataOutputStream output, UUID uuid, String name) throws IOException {
+        output.writeLong(uuid.getMostSignificantBits());
+        output.writeLong(uuid.getLeastSignificantBits());
+        output.writeUTF(name);
+    }
+}
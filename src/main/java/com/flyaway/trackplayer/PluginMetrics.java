@@ -0,0 +1,183 @@
+package com.flyaway.trackplayer;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Счетчики внутренней работы плагина для /trackplayer admin status и экспорта метрик.
+// Запись в LongAdder из основного потока не конкурирует с чтением при экспорте.
+public class PluginMetrics {
+
+    // Верхние границы корзин гистограммы длительности сохранения, мс
+    static final double[] FLUSH_BUCKETS_MS = {1, 5, 10, 25, 50, 100, 250, 500, 1000, 5000};
+
+    // Откуда взято значение статистики игрока
+    public enum LookupPath {
+        ONLINE("online"),
+        PENDING("pending"),
+        OFFLINE_CACHE("offline_cache"),
+        STORAGE("storage");
+
+        private final String key;
+
+        LookupPath(String key) {
+            this.key = key;
+        }
+
+        public String key() {
+            return key;
+        }
+    }
+
+    // События по id статистики
+    private volatile LongAdder[] statEvents = new LongAdder[0];
+    private final LongAdder placeholderRequests = new LongAdder();
+    private final LongAdder placeholderUnknown = new LongAdder();
+    private final LongAdder[] lookups = new LongAdder[LookupPath.values().length];
+    private final LockMeter leaderboardLocks = new LockMeter();
+    private final LockMeter journalLocks = new LockMeter();
+    // Последняя корзина - больше последней границы
+    private final AtomicLongArray flushBuckets = new AtomicLongArray(FLUSH_BUCKETS_MS.length + 1);
+    private final LongAdder flushNanos = new LongAdder();
+    private volatile int storedPlayers = -1;
+
+    // Скорость запросов плейсхолдеров между двумя последними выборками
+    private long lastSampleNanos = System.nanoTime();
+    private long lastSampleRequests;
+    private volatile double placeholderRate;
+
+    public PluginMetrics() {
+        for (int i = 0; i < lookups.length; i++) {
+            lookups[i] = new LongAdder();
+        }
+    }
+
+    public void recordEvent(StatType stat) {
+        events(stat.id()).increment();
+    }
+
+    public long getEvents(StatType stat) {
+        LongAdder[] current = statEvents;
+        return stat.id() < current.length ? current[stat.id()].sum() : 0;
+    }
+
+    private LongAdder events(int id) {
+        LongAdder[] current = statEvents;
+        return id < current.length ? current[id] : growEvents(id);
+    }
+
+    private synchronized LongAdder growEvents(int id) {
+        LongAdder[] current = statEvents;
+        if (id >= current.length) {
+            LongAdder[] updated = Arrays.copyOf(current, Math.max(id + 1, current.length * 2));
+            for (int i = current.length; i < updated.length; i++) {
+                updated[i] = new LongAdder();
+            }
+            statEvents = updated;
+            current = updated;
+        }
+        return current[id];
+    }
+
+    // known - плейсхолдер распознан
+    public void recordPlaceholder(boolean known) {
+        placeholderRequests.increment();
+        if (!known) {
+            placeholderUnknown.increment();
+        }
+    }
+
+    public void recordLookup(LookupPath path) {
+        lookups[path.ordinal()].increment();
+    }
+
+    // Поток записи: длительность одного сохранения в хранилище
+    public void recordFlush(long nanos) {
+        flushNanos.add(nanos);
+        double millis = nanos / 1_000_000.0;
+        int bucket = 0;
+        while (bucket < FLUSH_BUCKETS_MS.length && millis > FLUSH_BUCKETS_MS[bucket]) {
+            bucket++;
+        }
+        flushBuckets.incrementAndGet(bucket);
+    }
+
+    public void setStoredPlayers(int storedPlayers) {
+        this.storedPlayers = storedPlayers;
+    }
+
+    // Вызывается раз в секунду из одного потока
+    public void sample() {
+        long now = System.nanoTime();
+        long requests = placeholderRequests.sum();
+        double seconds = (now - lastSampleNanos) / 1_000_000_000.0;
+        if (seconds > 0) {
+            placeholderRate = (requests - lastSampleRequests) / seconds;
+        }
+        lastSampleNanos = now;
+        lastSampleRequests = requests;
+    }
+
+    public long getPlaceholderRequests() {
+        return placeholderRequests.sum();
+    }
+
+    public long getPlaceholderUnknown() {
+        return placeholderUnknown.sum();
+    }
+
+    public double getPlaceholderRate() {
+        return placeholderRate;
+    }
+
+    public long getLookups(LookupPath path) {
+        return lookups[path.ordinal()].sum();
+    }
+
+    public LockMeter getLeaderboardLocks() {
+        return leaderboardLocks;
+    }
+
+    public LockMeter getJournalLocks() {
+        return journalLocks;
+    }
+
+    // Количество сохранений в корзине (без накопления)
+    public long getFlushBucket(int bucket) {
+        return flushBuckets.get(bucket);
+    }
+
+    public long getFlushCount() {
+        long count = 0;
+        for (int i = 0; i < flushBuckets.length(); i++) {
+            count += flushBuckets.get(i);
+        }
+        return count;
+    }
+
+    public long getFlushNanos() {
+        return flushNanos.sum();
+    }
+
+    // Оценка квантиля длительности сохранения по верхней границе корзины, -1 если сохранений не было
+    public double getFlushQuantileMillis(double quantile) {
+        long count = getFlushCount();
+        if (count == 0) {
+            return -1;
+        }
+        long threshold = (long) Math.ceil(count * quantile);
+        long seen = 0;
+        for (int i = 0; i < FLUSH_BUCKETS_MS.length; i++) {
+            seen += flushBuckets.get(i);
+            if (seen >= threshold) {
+                return FLUSH_BUCKETS_MS[i];
+            }
+        }
+        return Double.POSITIVE_INFINITY;
+    }
+
+    // -1, пока хранилище еще не сохранялось
+    public int getStoredPlayers() {
+        return storedPlayers;
+    }
+}
@@ -0,0 +1,73 @@
+package com.flyaway.trackplayer;
+
+import org.bukkit.plugin.Plugin;
+
+import java.util.concurrent.TimeUnit;
+
+// Задачи плагина. На Folia BukkitScheduler недоступен - используются планировщики глобального региона
+// и асинхронный; на Paper задачи идут через BukkitScheduler, как и раньше.
+public class PluginScheduler {
+
+    private static final boolean FOLIA = isFolia();
+
+    private final Plugin plugin;
+
+    public PluginScheduler(Plugin plugin) {
+        this.plugin = plugin;
+    }
+
+    public static boolean isFolia() {
+        try {
+            Class.forName("io.papermc.paper.threadedregions.RegionizedServer");
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    // Повторяющаяся задача в основном потоке или глобальном регионе (интервалы в тиках)
+    public void repeat(Runnable task, long delayTicks, long periodTicks) {
+        if (FOLIA) {
+            plugin.getServer().getGlobalRegionScheduler()
+                    .runAtFixedRate(plugin, scheduled -> task.run(), Math.max(1, delayTicks), Math.max(1, periodTicks));
+        } else {
+            plugin.getServer().getScheduler().runTaskTimer(plugin, task, delayTicks, periodTicks);
+        }
+    }
+
+    // Повторяющаяся задача вне потоков сервера (интервалы в тиках)
+    public void repeatAsync(Runnable task, long delayTicks, long periodTicks) {
+        if (FOLIA) {
+            plugin.getServer().getAsyncScheduler()
+                    .runAtFixedRate(plugin, scheduled -> task.run(), Math.max(1, delayTicks) * 50, Math.max(1, periodTicks) * 50,
+                            TimeUnit.MILLISECONDS);
+        } else {
+            plugin.getServer().getScheduler().runTaskTimerAsynchronously(plugin, task, delayTicks, periodTicks);
+        }
+    }
+
+    public void run(Runnable task) {
+        if (FOLIA) {
+            plugin.getServer().getGlobalRegionScheduler().run(plugin, scheduled -> task.run());
+        } else {
+            plugin.getServer().getScheduler().runTask(plugin, task);
+        }
+    }
+
+    public void runAsync(Runnable task) {
+        if (FOLIA) {
+            plugin.getServer().getAsyncScheduler().runNow(plugin, scheduled -> task.run());
+        } else {
+            plugin.getServer().getScheduler().runTaskAsynchronously(plugin, task);
+        }
+    }
+
+    public void cancelAll() {
+        if (FOLIA) {
+            plugin.getServer().getGlobalRegionScheduler().cancelTasks(plugin);
+            plugin.getServer().getAsyncScheduler().cancelTasks(plugin);
+        } else {
+            plugin.getServer().getScheduler().cancelTasks(plugin);
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.flyaway.trackplayer;
+
+import org.bukkit.configuration.file.FileConfiguration;
+
+// Настройки, которые читаются в обработчиках событий. Пересобираются целиком при /trackplayer reload.
+public record PluginSettings(boolean debug,
+                             boolean trackDeaths,
+                             boolean trackPlayerKills,
+                             boolean trackMobKills,
+                             long quitGracePeriod) {
+
+    public static PluginSettings load(FileConfiguration config) {
+        return new PluginSettings(
+                config.getBoolean("debug", false),
+                config.getBoolean("track-deaths", true),
+                config.getBoolean("track-player-kills", true),
+                config.getBoolean("track-mob-kills", true),
+                config.getLong("quit-grace-period", 60));
+    }
+}
@@ -0,0 +1,152 @@
+package com.flyaway.trackplayer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collection;
+import java.util.logging.Logger;
+
+// Встроенная база SQLite (драйвер уже есть в Paper). Одна строка на пару игрок/статистика,
+// поэтому загрузка игрока ленивая, а запись затрагивает только изменившиеся записи.
+// Запись идет через отдельное соединение, чтение в режиме WAL не ждет записи.
+// В value лежит само значение, а номер сброса (у оконных статистик - номер периода) - в отдельном
+// столбце epoch, поэтому таблица читается без resets.yml и понятна внешним программам.
+public class SqliteStatsStorage extends JdbcStatsStorage {
+
+    private static final String UPSERT = "INSERT INTO trackplayer_stats (uuid, stat, value, epoch) VALUES (?, ?, ?, ?) " +
+            "ON CONFLICT(uuid, stat) DO UPDATE SET value = excluded.value, epoch = excluded.epoch";
+    private static final String DELETE = "DELETE FROM trackplayer_stats WHERE uuid = ? AND stat = ?";
+
+    private final File databaseFile;
+
+    public SqliteStatsStorage(File databaseFile, StatRegistry registry, Logger logger) {
+        super(registry, logger, "базе данных");
+        this.databaseFile = databaseFile;
+    }
+
+    @Override
+    public String getName() {
+        return "sqlite";
+    }
+
+    @Override
+    public void open() throws IOException {
+        try {
+            Class.forName("org.sqlite.JDBC");
+            String url = "jdbc:sqlite:" + databaseFile.getAbsolutePath();
+            writeConnection = DriverManager.getConnection(url);
+            try (Statement statement = writeConnection.createStatement()) {
+                statement.execute("PRAGMA journal_mode=WAL");
+                statement.execute("PRAGMA synchronous=NORMAL");
+                statement.execute("CREATE TABLE IF NOT EXISTS trackplayer_stats (" +
+                        "uuid CHAR(36) NOT NULL, " +
+                        "stat VARCHAR(64) NOT NULL, " +
+                        "value BIGINT NOT NULL DEFAULT 0, " +
+                        "epoch BIGINT NOT NULL DEFAULT 0, " +
+                        "PRIMARY KEY (uuid, stat))");
+                addEpochColumn(statement);
+                // Индекс для рейтингов: выборка по статистике и текущему сбросу, упорядоченная по значению.
+                // Прежний индекс без epoch после сброса заставлял бы проходить устаревшие значения
+                statement.execute("DROP INDEX IF EXISTS trackplayer_stats_rank");
+                statement.execute("CREATE INDEX IF NOT EXISTS trackplayer_stats_top " +
+                        "ON trackplayer_stats (stat, epoch, value DESC)");
+            }
+            writeConnection.setAutoCommit(false);
+            readConnection = DriverManager.getConnection(url);
+            registerStoredKeys();
+        } catch (ClassNotFoundException | SQLException e) {
+            throw new IOException("Не удалось открыть базу " + databaseFile.getName(), e);
+        }
+    }
+
+    // Базы прежних версий хранили номер сброса упакованным в старшие биты value
+    private void addEpochColumn(Statement statement) throws SQLException {
+        try (ResultSet columns = statement.executeQuery("PRAGMA table_info(trackplayer_stats)")) {
+            while (columns.next()) {
+                if ("epoch".equals(columns.getString("name"))) {
+                    return;
+                }
+            }
+        }
+        statement.execute("ALTER TABLE trackplayer_stats ADD COLUMN epoch BIGINT NOT NULL DEFAULT 0");
+        int unpacked = statement.executeUpdate("UPDATE trackplayer_stats SET epoch = value >> " + WindowClock.VALUE_BITS +
+                ", value = value & " + WindowClock.VALUE_MASK + " WHERE value > " + WindowClock.VALUE_MASK);
+        logger.info("База " + databaseFile.getName() + " обновлена: номера сбросов перенесены в столбец epoch (" +
+                unpacked + " значений)");
+    }
+
+    @Override
+    protected boolean hasEpochColumn() {
+        return true;
+    }
+
+    @Override
+    protected String valueColumns() {
+        return "value, epoch";
+    }
+
+    @Override
+    protected long readRaw(ResultSet row, int column) throws SQLException {
+        long epoch = row.getLong(column + 1);
+        return epoch != 0 ? WindowClock.pack(epoch, row.getLong(column)) : row.getLong(column);
+    }
+
+    @Override
+    public long maxEpoch(StatType type) throws IOException {
+        synchronized (readConnection) {
+            try (PreparedStatement statement = readConnection.prepareStatement(
+                    "SELECT MAX(epoch) FROM trackplayer_stats WHERE stat = ? AND value > 0")) {
+                statement.setString(1, type.key());
+                try (ResultSet result = statement.executeQuery()) {
+                    return result.next() ? result.getLong(1) : 0;
+                }
+            } catch (SQLException e) {
+                throw new IOException(e);
+            }
+        }
+    }
+
+    @Override
+    public long save(Collection<StatsSnapshot> snapshots) throws IOException {
+        long bytes = 0;
+        try (PreparedStatement statement = writeConnection.prepareStatement(UPSERT);
+             PreparedStatement delete = writeConnection.prepareStatement(DELETE)) {
+            for (StatsSnapshot snapshot : snapshots) {
+                String uuid = snapshot.uuid().toString();
+                // Пишутся только статистики, изменившиеся с прошлого снимка игрока
+                for (int id = 0; id < snapshot.size(); id++) {
+                    StatType type = registry.byId(id);
+                    if (type == null || !snapshot.isChanged(id)) {
+                        continue;
+                    }
+                    long value = snapshot.get(id);
+                    // Нулевые значения дополнительных статистик не храним: строк столько, сколько реально набрано
+                    if (value == 0 && id >= StatRegistry.BUILT_IN_COUNT) {
+                        delete.setString(1, uuid);
+                        delete.setString(2, type.key());
+                        delete.addBatch();
+                        continue;
+                    }
+                    statement.setString(1, uuid);
+                    statement.setString(2, type.key());
+                    statement.setLong(3, WindowClock.value(value));
+                    statement.setLong(4, WindowClock.tag(value));
+                    statement.addBatch();
+                    bytes += uuid.length() + type.key().getBytes(StandardCharsets.UTF_8).length + 2 * Long.BYTES;
+                }
+            }
+            statement.executeBatch();
+            delete.executeBatch();
+            writeConnection.commit();
+        } catch (SQLException e) {
+            rollback();
+            throw new IOException(e);
+        }
+        return bytes;
+    }
+}
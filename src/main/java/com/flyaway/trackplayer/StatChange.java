@@ -0,0 +1,7 @@
+package com.flyaway.trackplayer;
+
+import java.util.UUID;
+
+// Изменение статистики игрока за тик: delta - прирост с прошлого уведомления, value - значение после него
+public record StatChange(UUID uuid, StatType stat, long delta, long value) {
+}
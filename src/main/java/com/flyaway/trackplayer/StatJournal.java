@@ -0,0 +1,404 @@
+package com.flyaway.trackplayer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntToLongFunction;
+import java.util.logging.Logger;
+
+// Журнал изменений статистики: каждое изменение дописывается в буфер как абсолютное значение,
+// поток записи раз в commit-interval сбрасывает буфер в файл одной последовательной записью.
+// Журнал делится на сегменты: сегмент удаляется, когда все его изменения сохранены в хранилище,
+// оставшиеся сегменты применяются к хранилищу при запуске.
+// Буфер разбит на полосы по UUID: изменения разных игроков из потоков регионов Folia не ждут
+// друг друга, а записи одного игрока всегда попадают в одну полосу и сохраняют порядок.
+public class StatJournal {
+
+    private static final byte RECORD_KEY = 1;   // id (short), длина (short), ключ статистики
+    private static final byte RECORD_VALUE = 2; // uuid (2 long), id (short), значение (long)
+    private static final byte RECORD_RESET = 3; // id (short)
+    private static final int VALUE_RECORD_SIZE = 1 + 16 + 2 + 8;
+    private static final String PREFIX = "journal-";
+    private static final String SUFFIX = ".bin";
+
+    private static final int STRIPES = 16;
+
+    private record Segment(long number, ByteBuffer buffer) {
+    }
+
+    // Полоса буфера текущего сегмента; доступ под ее блокировкой
+    private static final class Stripe {
+        private final ReentrantLock lock = new ReentrantLock();
+        private ByteBuffer buffer = ByteBuffer.allocate(16 * 1024);
+        // Ключи, уже описанные в этой полосе текущего сегмента (по id статистики)
+        private boolean[] definedKeys = new boolean[16];
+
+        private void defineKey(StatType stat) {
+            if (stat.id() >= definedKeys.length) {
+                definedKeys = Arrays.copyOf(definedKeys, Math.max(stat.id() + 1, definedKeys.length * 2));
+            }
+            if (definedKeys[stat.id()]) {
+                return;
+            }
+            byte[] key = stat.key().getBytes(StandardCharsets.UTF_8);
+            ensureCapacity(5 + key.length);
+            buffer.put(RECORD_KEY).putShort((short) stat.id()).putShort((short) key.length).put(key);
+            definedKeys[stat.id()] = true;
+        }
+
+        private void ensureCapacity(int bytes) {
+            if (buffer.remaining() < bytes) {
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes));
+                buffer.flip();
+                larger.put(buffer);
+                buffer = larger;
+            }
+        }
+    }
+
+    private final File directory;
+    private final StatRegistry registry;
+    private final Logger logger;
+
+    // Полосы текущего сегмента. Закрытые сегменты и номер текущего меняются только под блокировками
+    // всех полос, которые берутся в порядке индексов
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    private final LockMeter meter;
+    private final ArrayDeque<Segment> sealed = new ArrayDeque<>();
+    private long segment;
+
+    // Состояние потока записи
+    private FileChannel channel;
+    private long channelSegment = -1;
+    private volatile long committedBytes;
+    private volatile long commitCount;
+
+    public StatJournal(File directory, StatRegistry registry, Logger logger, LockMeter meter) {
+        this.directory = directory;
+        this.registry = registry;
+        this.logger = logger;
+        this.meter = meter;
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    // Применяет оставшиеся после прошлого запуска сегменты к хранилищу и удаляет их.
+    // Вызывается при запуске до начала работы потока записи.
+    public int replay(StatsStorage storage) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Не удалось создать папку журнала " + directory);
+        }
+
+        List<File> files = listSegments();
+        if (!files.isEmpty()) {
+            segment = segmentNumber(files.getLast()) + 1;
+        }
+
+        Map<UUID, Map<StatType, Long>> values = new HashMap<>();
+        Set<StatType> resets = new LinkedHashSet<>();
+        int records = 0;
+        for (File file : files) {
+            records += readSegment(file, values, resets);
+        }
+
+        if (records > 0) {
+            // Сброс сначала: значения, записанные после сброса, остались в values
+            for (StatType stat : resets) {
+                storage.resetAll(stat);
+            }
+
+            List<StatsSnapshot> snapshots = new ArrayList<>(values.size());
+            for (Map.Entry<UUID, Map<StatType, Long>> entry : values.entrySet()) {
+                StatsSnapshot stored = storage.load(entry.getKey());
+                StatsSnapshot snapshot = stored != null ? stored : StatsSnapshot.empty(entry.getKey());
+                for (Map.Entry<StatType, Long> value : entry.getValue().entrySet()) {
+                    snapshot = snapshot.with(value.getKey(), value.getValue());
+                }
+                snapshots.add(snapshot);
+            }
+            storage.save(snapshots);
+        }
+
+        for (File file : files) {
+            Files.deleteIfExists(file.toPath());
+        }
+        if (records > 0) {
+            logger.info("Из журнала восстановлено изменений: " + records + " (игроков: " + values.size() + ")");
+        }
+        return records;
+    }
+
+    private int readSegment(File file, Map<UUID, Map<StatType, Long>> values, Set<StatType> resets) throws IOException {
+        ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+        Map<Integer, StatType> keys = new HashMap<>();
+        int records = 0;
+
+        // Незаконченная последняя запись (сбой во время записи) отбрасывается
+        while (data.hasRemaining()) {
+            byte type = data.get();
+            if (type == RECORD_KEY && data.remaining() >= 4) {
+                int id = data.getShort();
+                int length = data.getShort();
+                if (data.remaining() < length) {
+                    break;
+                }
+                byte[] key = new byte[length];
+                data.get(key);
+                keys.put(id, registry.register(new String(key, StandardCharsets.UTF_8), null));
+            } else if (type == RECORD_VALUE && data.remaining() >= VALUE_RECORD_SIZE - 1) {
+                UUID uuid = new UUID(data.getLong(), data.getLong());
+                StatType stat = keys.get((int) data.getShort());
+                long value = data.getLong();
+                if (stat != null) {
+                    values.computeIfAbsent(uuid, id -> new HashMap<>()).put(stat, value);
+                    records++;
+                }
+            } else if (type == RECORD_RESET && data.remaining() >= 2) {
+                StatType stat = keys.get((int) data.getShort());
+                if (stat != null) {
+                    for (Map<StatType, Long> playerValues : values.values()) {
+                        playerValues.remove(stat);
+                    }
+                    resets.add(stat);
+                    records++;
+                }
+            } else {
+                logger.warning("Журнал " + file.getName() + " обрывается на позиции " + (data.position() - 1));
+                break;
+            }
+        }
+        return records;
+    }
+
+    // Блокировка полосы игрока. При чтении побеждает последняя запись значения, поэтому счетчики меняются
+    // и их новые значения пишутся под этой блокировкой: записи идут в том же порядке, что и изменения.
+    // append под ней берет блокировку повторно без ожидания
+    public void lock(UUID uuid) {
+        meter.lock(stripeFor(uuid).lock);
+    }
+
+    public void unlock(UUID uuid) {
+        stripeFor(uuid).lock.unlock();
+    }
+
+    // Поток владельца игрока: новое значение статистики игрока
+    public void append(UUID uuid, StatType stat, long value) {
+        Stripe stripe = stripeFor(uuid);
+        meter.lock(stripe.lock);
+        try {
+            put(stripe, uuid, stat, value);
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    // Новые значения статистики и корзин ее окон из записи игрока
+    public void append(UUID uuid, StatType stat, IntToLongFunction values) {
+        Stripe stripe = stripeFor(uuid);
+        meter.lock(stripe.lock);
+        try {
+            put(stripe, uuid, stat, values.applyAsLong(stat.id()));
+            for (StatType window : stat.windows()) {
+                put(stripe, uuid, window, values.applyAsLong(window.id()));
+                put(stripe, uuid, window.counterpart(), values.applyAsLong(window.counterpart().id()));
+            }
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    private static void put(Stripe stripe, UUID uuid, StatType stat, long value) {
+        stripe.defineKey(stat);
+        stripe.ensureCapacity(VALUE_RECORD_SIZE);
+        stripe.buffer.put(RECORD_VALUE)
+                .putLong(uuid.getMostSignificantBits())
+                .putLong(uuid.getLeastSignificantBits())
+                .putShort((short) stat.id())
+                .putLong(value);
+    }
+
+    // Сброс открывает новый сегмент и стоит в нем первым: при чтении полосы сегмента идут подряд,
+    // и значения, записанные до сброса в другие полосы, иначе оказались бы после него
+    public void appendReset(StatType stat) {
+        lockAll();
+        try {
+            closeSegment();
+            Stripe first = stripes[0];
+            first.defineKey(stat);
+            first.ensureCapacity(3);
+            first.buffer.put(RECORD_RESET).putShort((short) stat.id());
+        } finally {
+            unlockAll();
+        }
+    }
+
+    // Глобальный поток, перед снятием снимков для сохранения: все изменения закрытых сегментов
+    // уже есть в счетчиках, следующие изменения идут в новый сегмент. Возвращает номер закрытого сегмента
+    public long seal() {
+        lockAll();
+        try {
+            return closeSegment();
+        } finally {
+            unlockAll();
+        }
+    }
+
+    // Под блокировками всех полос: непустые полосы уходят в очередь записи, возвращает номер закрытого сегмента
+    private long closeSegment() {
+        for (Stripe stripe : stripes) {
+            if (stripe.buffer.position() > 0) {
+                stripe.buffer.flip();
+                sealed.add(new Segment(segment, stripe.buffer));
+                stripe.buffer = ByteBuffer.allocate(Math.max(16 * 1024, stripe.buffer.capacity() / 2));
+            }
+            // Каждый файл сегмента описывает свои ключи заново
+            Arrays.fill(stripe.definedKeys, false);
+        }
+        return segment++;
+    }
+
+    private Stripe stripeFor(UUID uuid) {
+        int hash = uuid.hashCode();
+        return stripes[(hash ^ (hash >>> 16)) & (STRIPES - 1)];
+    }
+
+    private void lockAll() {
+        for (Stripe stripe : stripes) {
+            meter.lock(stripe.lock);
+        }
+    }
+
+    private void unlockAll() {
+        for (int i = stripes.length - 1; i >= 0; i--) {
+            stripes[i].lock.unlock();
+        }
+    }
+
+    // Поток записи: групповая запись накопленных изменений с fsync
+    public void commit() throws IOException {
+        List<Segment> pending;
+        lockAll();
+        try {
+            pending = new ArrayList<>(sealed);
+            sealed.clear();
+            for (Stripe stripe : stripes) {
+                if (stripe.buffer.position() > 0) {
+                    stripe.buffer.flip();
+                    pending.add(new Segment(segment, stripe.buffer));
+                    stripe.buffer = ByteBuffer.allocate(stripe.buffer.capacity());
+                }
+            }
+        } finally {
+            unlockAll();
+        }
+
+        long bytes = 0;
+        for (Segment part : pending) {
+            FileChannel target = channelFor(part.number());
+            bytes += part.buffer().remaining();
+            while (part.buffer().hasRemaining()) {
+                target.write(part.buffer());
+            }
+        }
+        if (channel != null && bytes > 0) {
+            channel.force(false);
+            committedBytes += bytes;
+            commitCount++;
+        }
+    }
+
+    // Поток записи, после успешного сохранения: сегменты до covered включительно больше не нужны
+    public void discardUpTo(long covered) throws IOException {
+        if (covered < 0) {
+            return;
+        }
+        // Еще не записанные закрытые сегменты писать уже незачем
+        lockAll();
+        try {
+            sealed.removeIf(part -> part.number() <= covered);
+        } finally {
+            unlockAll();
+        }
+        if (channel != null && channelSegment <= covered) {
+            channel.close();
+            channel = null;
+            channelSegment = -1;
+        }
+        for (File file : listSegments()) {
+            if (segmentNumber(file) <= covered) {
+                Files.deleteIfExists(file.toPath());
+            }
+        }
+    }
+
+    public void close() {
+        try {
+            commit();
+            if (channel != null) {
+                channel.close();
+                channel = null;
+            }
+        } catch (IOException e) {
+            logger.warning("Ошибка закрытия журнала: " + e.getMessage());
+        }
+    }
+
+    private FileChannel channelFor(long number) throws IOException {
+        if (channel != null && channelSegment == number) {
+            return channel;
+        }
+        if (channel != null) {
+            channel.force(false);
+            channel.close();
+        }
+        channel = FileChannel.open(new File(directory, PREFIX + number + SUFFIX).toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        channelSegment = number;
+        return channel;
+    }
+
+    private List<File> listSegments() {
+        File[] files = directory.listFiles((dir, name) -> name.startsWith(PREFIX) && name.endsWith(SUFFIX));
+        List<File> result = new ArrayList<>(files != null ? Arrays.asList(files) : List.of());
+        result.removeIf(file -> segmentNumber(file) < 0);
+        result.sort((first, second) -> Long.compare(segmentNumber(first), segmentNumber(second)));
+        return result;
+    }
+
+    private static long segmentNumber(File file) {
+        String name = file.getName();
+        try {
+            return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    public long getCommittedBytes() {
+        return committedBytes;
+    }
+
+    public long getCommitCount() {
+        return commitCount;
+    }
+
+    public int getSegmentCount() {
+        File[] files = directory.listFiles((dir, name) -> name.startsWith(PREFIX) && name.endsWith(SUFFIX));
+        return files != null ? files.length : 0;
+    }
+}
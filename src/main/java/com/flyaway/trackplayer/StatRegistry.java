@@ -0,0 +1,120 @@
+package com.flyaway.trackplayer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+// Реестр статистик. Встроенные статистики занимают первые id, остальные регистрируют другие плагины
+// через TrackPlayer.getStatRegistry().register(...). Регистрация по ключу идемпотентна: ключи, найденные
+// в хранилище до регистрации плагином, получают id заранее и сохраняют свои данные.
+public final class StatRegistry {
+
+    private static final Pattern KEY_PATTERN = Pattern.compile("[a-z0-9_]{1,64}");
+
+    public static final StatType DEATHS = new StatType(0, "deaths", "Смерти");
+    public static final StatType PLAYER_KILLS = new StatType(1, "player_kills", "Убийств игроков");
+    public static final StatType MOB_KILLS = new StatType(2, "mob_kills", "Убийств мобов");
+    public static final int BUILT_IN_COUNT = 3;
+
+    private final Map<String, StatType> byKey = new ConcurrentHashMap<>();
+    // Копия при записи: чтение по id без блокировок
+    private volatile StatType[] types = new StatType[0];
+
+    public StatRegistry() {
+        add(DEATHS);
+        add(PLAYER_KILLS);
+        add(MOB_KILLS);
+        alias("kills", PLAYER_KILLS);
+        alias("mobkills", MOB_KILLS);
+    }
+
+    public synchronized StatType register(String key, String displayName) {
+        String normalized = key.toLowerCase(Locale.ROOT);
+        if (!KEY_PATTERN.matcher(normalized).matches()) {
+            throw new IllegalArgumentException("Недопустимый ключ статистики: " + key);
+        }
+
+        StatType existing = byKey.get(normalized);
+        if (existing != null) {
+            if (displayName != null) {
+                existing.setDisplayName(displayName);
+            }
+            return existing;
+        }
+
+        StatType type = new StatType(types.length, normalized, displayName != null ? displayName : normalized);
+        add(type);
+        return type;
+    }
+
+    // Регистрирует корзины текущего и прошлого периода: <key>_<window> и <key>_<window>_last
+    public synchronized StatType registerWindowed(StatType base, StatWindow window) {
+        if (base.isWindowed()) {
+            throw new IllegalArgumentException("Статистика " + base.key() + " уже оконная");
+        }
+        for (StatType existing : base.windows()) {
+            if (existing.window() == window) {
+                return existing;
+            }
+        }
+
+        String key = base.key() + "_" + window.key();
+        StatType current = register(key, base.displayName() + " (" + window.displayName() + ")");
+        StatType last = register(key + "_last", base.displayName() + " (" + window.displayName() + ", прошлый период)");
+        current.bindWindow(window, base, last, false);
+        last.bindWindow(window, base, current, true);
+        base.addWindow(current);
+        return current;
+    }
+
+    public synchronized void alias(String alias, StatType type) {
+        byKey.putIfAbsent(alias.toLowerCase(Locale.ROOT), type);
+    }
+
+    private void add(StatType type) {
+        StatType[] updated = Arrays.copyOf(types, types.length + 1);
+        updated[type.id()] = type;
+        byKey.put(type.key(), type);
+        types = updated;
+    }
+
+    // Статистика по ключу или псевдониму, либо null
+    public StatType get(String key) {
+        return byKey.get(key);
+    }
+
+    public StatType byId(int id) {
+        StatType[] current = types;
+        return id >= 0 && id < current.length ? current[id] : null;
+    }
+
+    // Номера сбросов сверяются с хранилищем: resets.yml мог потеряться, откатиться или не переехать вместе
+    // с данными. Номер меньше найденного в хранилище заменяется им; возвращает исправленные статистики
+    public List<StatType> restoreEpochs(StatsStorage storage) throws IOException {
+        List<StatType> restored = new ArrayList<>();
+        for (StatType type : getAll()) {
+            if (type.isWindowed()) {
+                continue;
+            }
+            long stored = storage.maxEpoch(type);
+            if (stored > type.epoch()) {
+                type.setEpoch((int) stored);
+                restored.add(type);
+            }
+        }
+        return restored;
+    }
+
+    public List<StatType> getAll() {
+        return List.of(types);
+    }
+
+    public int size() {
+        return types.length;
+    }
+}
@@ -0,0 +1,114 @@
+package com.flyaway.trackplayer;
+
+import java.util.Arrays;
+
+// Зарегистрированная статистика. id - индекс в массиве значений каждого игрока.
+// Оконная статистика (window != null) хранит упакованные период и значение, см. WindowClock.
+// Обычная статистика после первого сброса хранит так же упакованные номер сброса и значение.
+public final class StatType {
+
+    private static final StatType[] NO_WINDOWS = new StatType[0];
+
+    private final int id;
+    private final String key;
+    private volatile String displayName;
+    private volatile StatWindow window;
+    // Для оконной статистики: исходная статистика и парная корзина (текущая <-> прошлый период)
+    private volatile StatType base;
+    private volatile StatType counterpart;
+    private volatile boolean previous;
+    // Для обычной статистики: текущие корзины ее окон, обновляются вместе с ней
+    private volatile StatType[] windows = NO_WINDOWS;
+    // Номер сброса обычной статистики: значения с другим номером считаются нулем.
+    // До первого сброса 0, и упакованное значение совпадает с обычным числом
+    private volatile int epoch;
+
+    StatType(int id, String key, String displayName) {
+        this.id = id;
+        this.key = key;
+        this.displayName = displayName;
+    }
+
+    public int id() {
+        return id;
+    }
+
+    public String key() {
+        return key;
+    }
+
+    public String displayName() {
+        return displayName;
+    }
+
+    void setDisplayName(String displayName) {
+        this.displayName = displayName;
+    }
+
+    public StatWindow window() {
+        return window;
+    }
+
+    public boolean isWindowed() {
+        return window != null;
+    }
+
+    public StatType base() {
+        return base;
+    }
+
+    public StatType counterpart() {
+        return counterpart;
+    }
+
+    // true для корзины прошлого периода
+    public boolean isPrevious() {
+        return previous;
+    }
+
+    public StatType[] windows() {
+        return windows;
+    }
+
+    public int epoch() {
+        return epoch;
+    }
+
+    void setEpoch(int epoch) {
+        this.epoch = epoch;
+    }
+
+    // Значение обычной статистики по сырому значению записи. Значение с чужим номером сброса читается
+    // как ноль, а не как упакованное число, даже если номер сброса неизвестен (потерян resets.yml)
+    public long decode(long raw) {
+        int current = epoch;
+        if (current == 0) {
+            return WindowClock.tag(raw) == 0 ? raw : 0;
+        }
+        return WindowClock.tag(raw) == current ? WindowClock.value(raw) : 0;
+    }
+
+    // Сырое значение обычной статистики для текущего номера сброса
+    public long encode(long value) {
+        int current = epoch;
+        return current == 0 ? value : WindowClock.pack(current, Math.max(0, value));
+    }
+
+    void bindWindow(StatWindow window, StatType base, StatType counterpart, boolean previous) {
+        this.window = window;
+        this.base = base;
+        this.counterpart = counterpart;
+        this.previous = previous;
+    }
+
+    void addWindow(StatType current) {
+        StatType[] updated = Arrays.copyOf(windows, windows.length + 1);
+        updated[windows.length] = current;
+        windows = updated;
+    }
+
+    @Override
+    public String toString() {
+        return key;
+    }
+}
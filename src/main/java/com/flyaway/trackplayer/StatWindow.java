@@ -0,0 +1,48 @@
+package com.flyaway.trackplayer;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+
+// Период оконной статистики. Номер периода считается от начала эпохи, поэтому смена периода
+// определяется сравнением номеров без обхода сохраненных игроков.
+public enum StatWindow {
+    DAILY("daily", "день"),
+    WEEKLY("weekly", "неделя"),
+    MONTHLY("monthly", "месяц"),
+    SEASON("season", "сезон");
+
+    private final String key;
+    private final String displayName;
+
+    StatWindow(String key, String displayName) {
+        this.key = key;
+        this.displayName = displayName;
+    }
+
+    public String key() {
+        return key;
+    }
+
+    public String displayName() {
+        return displayName;
+    }
+
+    public static StatWindow fromKey(String key) {
+        for (StatWindow window : values()) {
+            if (window.key.equalsIgnoreCase(key)) {
+                return window;
+            }
+        }
+        return null;
+    }
+
+    long period(LocalDate date, LocalDate seasonStart, int seasonLengthDays) {
+        return switch (this) {
+            case DAILY -> date.toEpochDay();
+            // 1970-01-01 - четверг, сдвиг на 3 дня начинает неделю с понедельника
+            case WEEKLY -> Math.floorDiv(date.toEpochDay() + 3, 7);
+            case MONTHLY -> date.getYear() * 12L + date.getMonthValue() - 1;
+            case SEASON -> Math.max(0, Math.floorDiv(ChronoUnit.DAYS.between(seasonStart, date), seasonLengthDays));
+        };
+    }
+}
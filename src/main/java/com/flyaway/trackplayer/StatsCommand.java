@@ -6,16 +6,21 @@ import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
 import org.bukkit.Bukkit;
 
+import java.util.Locale;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 public class StatsCommand implements CommandExecutor {
 
+    private static final int PAGE_SIZE = 10;
+
     @Override
     public boolean onCommand(CommandSender sender, Command command, String label, String[] args) {
         if (args.length == 0) {
-            if (sender instanceof Player) {
-                showStats(sender, (Player) sender);
+            if (sender instanceof Player player) {
+                showStats(sender, player.getUniqueId(), player.getName());
             } else {
                 sender.sendMessage("Используйте: /trackplayer <player> или /trackplayer admin <subcommand>");
             }
@@ -35,7 +40,7 @@ public class StatsCommand implements CommandExecutor {
                     sender.sendMessage("§cУ вас нет прав для использования этой команды!");
                     return true;
                 }
-                TrackPlayer.getInstance().reloadConfig();
+                TrackPlayer.getInstance().reloadPluginConfig();
                 sender.sendMessage("§aКонфигурация перезагружена!");
                 break;
             case "save":
@@ -56,9 +61,18 @@ public class StatsCommand implements CommandExecutor {
             default:
                 Player target = Bukkit.getPlayer(args[0]);
                 if (target != null) {
-                    showStats(sender, target);
-                } else {
+                    showStats(sender, target.getUniqueId(), target.getName());
+                    break;
+                }
+                // Офлайн игрок - по индексу последних известных имен
+                TrackPlayer plugin = TrackPlayer.getInstance();
+                UUID offline = plugin.getPlayerNames().find(args[0]);
+                if (offline == null) {
                     sender.sendMessage("§cИгрок не найден!");
+                } else if (!plugin.isStorageReady()) {
+                    sender.sendMessage("§cДанные игроков еще загружаются, попробуйте позже");
+                } else {
+                    showStats(sender, offline, plugin.getPlayerNames().get(offline));
                 }
                 break;
         }
@@ -66,45 +80,202 @@ public class StatsCommand implements CommandExecutor {
         return true;
     }
 
-    private void showStats(CommandSender sender, Player player) {
+    // Снимок онлайн игрока готов сразу, офлайн игрок загружается потоком записи, а ответ приходит в глобальный поток
+    private void showStats(CommandSender sender, UUID uuid, String name) {
         TrackPlayer plugin = TrackPlayer.getInstance();
-        UUID uuid = player.getUniqueId();
+        CompletableFuture<Map<UUID, StatsSnapshot>> future = plugin.getStats(List.of(uuid));
+        if (future.isDone()) {
+            sendStats(sender, uuid, name, future.join().get(uuid));
+            return;
+        }
+        future.whenComplete((snapshots, error) -> plugin.getScheduler().run(() -> {
+            if (error != null) {
+                sender.sendMessage("§cНе удалось загрузить статистику, попробуйте позже");
+            } else {
+                sendStats(sender, uuid, name, snapshots.get(uuid));
+            }
+        }));
+    }
+
+    private void sendStats(CommandSender sender, UUID uuid, String name, StatsSnapshot snapshot) {
+        TrackPlayer plugin = TrackPlayer.getInstance();
+
+        sender.sendMessage("§6=== Статистика игрока " + name + " ===");
+        StringBuilder mobKills = new StringBuilder();
+        for (StatType stat : plugin.getStatRegistry().getAll()) {
+            long value = plugin.getStat(snapshot, stat);
+            if (MobKillStats.isMobKillStat(stat)) {
+                // Разбивка по типам мобов - одной строкой, только набранные значения
+                if (value != 0) {
+                    mobKills.append(mobKills.isEmpty() ? "" : "§7, §f")
+                            .append(stat.key().substring(MobKillStats.KEY_PREFIX.length())).append(' ').append(value);
+                }
+                continue;
+            }
+            // Оконные статистики показываем только за текущий период и только набранные
+            if (stat.isWindowed() && (stat.isPrevious() || value == 0)) {
+                continue;
+            }
+            sender.sendMessage("§7" + stat.displayName() + ": §f" + value +
+                    formatRank(plugin.getLeaderboardCache().getRank(stat, uuid)));
+        }
+        if (!mobKills.isEmpty()) {
+            sender.sendMessage("§7По типам мобов: §f" + mobKills);
+        }
+    }
 
-        sender.sendMessage("§6=== Статистика игрока " + player.getName() + " ===");
-        sender.sendMessage("§7Смерти: §f" + plugin.getDeaths(uuid));
-        sender.sendMessage("§7Убийств игроков: §f" + plugin.getPlayerKills(uuid));
-        sender.sendMessage("§7Убийств мобов: §f" + plugin.getMobKills(uuid));
+    private String formatRank(String rank) {
+        return "0".equals(rank) ? "" : " §7(#" + rank + ")";
     }
 
     private void showStatus(CommandSender sender) {
         TrackPlayer plugin = TrackPlayer.getInstance();
 
         sender.sendMessage("§6=== Статус TrackPlayer ===");
-        sender.sendMessage("§7Игроков в кэше: §f" + plugin.getCachedPlayersCount());
+        sender.sendMessage("§7Игроков в кэше: §f" + plugin.getCachedPlayersCount() +
+                " §7(ожидают выгрузки: §f" + plugin.getDepartingPlayersCount() + "§7)");
         sender.sendMessage("§7Статус сохранения: §f" + plugin.getSaveStatus());
+        sender.sendMessage("§7Статистик зарегистрировано: §f" + plugin.getStatRegistry().size());
+        sender.sendMessage("§7Известных имен игроков: §f" + plugin.getPlayerNames().size());
+        sender.sendMessage("§7Загрузка данных при запуске: §f" +
+                (plugin.getLoadMillis() >= 0 ? plugin.getLoadMillis() + " мс" : "идет"));
+
+        PlayerDataWriter writer = plugin.getDataWriter();
+        sender.sendMessage("§7Последнее сохранение: §f" + String.format(Locale.ROOT, "%.2f", writer.getLastFlushMillis()) +
+                " мс, " + writer.getLastFlushBytes() + " байт");
+        sender.sendMessage("§7Всего сохранений: §f" + writer.getFlushCount() +
+                " §7(записано " + writer.getTotalBytesWritten() + " байт)");
+        sender.sendMessage("§7Очередь записи: §f" + writer.getQueueSize() +
+                " §7(отложено при переполнении: " + writer.getRejectedOffers() +
+                ", ожиданий при остановке: " + writer.getBlockedSubmits() + ")");
+
+        OfflineStatsCache offlineCache = plugin.getOfflineCache();
+        sender.sendMessage("§7Офлайн-кэш: §f" + offlineCache.size() + " §7записей, попаданий: §f" + offlineCache.getHits() +
+                " §7промахов: §f" + offlineCache.getMisses() + " §7вытеснено: §f" + offlineCache.getEvictions() +
+                " §7устарело: §f" + offlineCache.getExpirations());
+        NetworkStatsStorage network = plugin.getNetworkStorage();
+        if (network != null) {
+            sender.sendMessage("§7Общее хранилище: §f" + network.getDrainCount() + " §7обменов, игроков с неотправленными приращениями: §f" +
+                    network.getBufferedPlayers());
+        }
+        StatJournal journal = plugin.getJournal();
+        if (journal != null) {
+            sender.sendMessage("§7Журнал изменений: §f" + journal.getSegmentCount() + " §7сегментов, записей на диск: §f" +
+                    journal.getCommitCount() + " §7(" + journal.getCommittedBytes() + " байт)");
+        }
+        showMetrics(sender, plugin);
         sender.sendMessage("§7Автосохранение: §fкаждые " +
                 plugin.getConfig().getInt("auto-save-interval", 5) + " минут");
     }
 
+    private void showMetrics(CommandSender sender, TrackPlayer plugin) {
+        PluginMetrics metrics = plugin.getMetrics();
+
+        StringBuilder events = new StringBuilder();
+        long mobTypeEvents = 0;
+        for (StatType stat : plugin.getStatRegistry().getAll()) {
+            long count = metrics.getEvents(stat);
+            if (count == 0) {
+                continue;
+            }
+            if (MobKillStats.isMobKillStat(stat)) {
+                mobTypeEvents += count;
+                continue;
+            }
+            events.append(events.isEmpty() ? "" : ", ").append(stat.key()).append(' ').append(count);
+        }
+        if (mobTypeEvents > 0) {
+            events.append(events.isEmpty() ? "" : ", ").append("по типам мобов ").append(mobTypeEvents);
+        }
+        sender.sendMessage("§7События: §f" + (events.isEmpty() ? "нет" : events));
+
+        sender.sendMessage("§7Плейсхолдеры: §f" + String.format(Locale.ROOT, "%.1f", metrics.getPlaceholderRate()) +
+                " §7в сек., всего §f" + metrics.getPlaceholderRequests() + " §7(нераспознано: " + metrics.getPlaceholderUnknown() + ")");
+        sender.sendMessage("§7Чтения статистики: §fонлайн " + metrics.getLookups(PluginMetrics.LookupPath.ONLINE) +
+                "§7, ожидают записи §f" + metrics.getLookups(PluginMetrics.LookupPath.PENDING) +
+                "§7, офлайн-кэш §f" + metrics.getLookups(PluginMetrics.LookupPath.OFFLINE_CACHE) +
+                "§7, хранилище §f" + metrics.getLookups(PluginMetrics.LookupPath.STORAGE));
+        sender.sendMessage("§7Ожидание блокировок: §fрейтинги " + formatLockWait(metrics.getLeaderboardLocks()) +
+                "§7, журнал §f" + formatLockWait(metrics.getJournalLocks()));
+
+        double median = metrics.getFlushQuantileMillis(0.5);
+        if (median >= 0) {
+            sender.sendMessage("§7Длительность сохранения: §fp50 ≤ " + formatBound(median) +
+                    " §7мс, §fp99 ≤ " + formatBound(metrics.getFlushQuantileMillis(0.99)) + " §7мс");
+        }
+        if (metrics.getStoredPlayers() >= 0) {
+            sender.sendMessage("§7Игроков в хранилище: §f" + metrics.getStoredPlayers());
+        }
+    }
+
+    private String formatLockWait(LockMeter meter) {
+        return String.format(Locale.ROOT, "%.2f", meter.getWaitNanos() / 1_000_000.0) + " мс (" + meter.getContended() + " раз)";
+    }
+
+    private String formatBound(double millis) {
+        return Double.isInfinite(millis) ? "∞" : String.format(Locale.ROOT, "%.0f", millis);
+    }
+
+    private void showMobKillsPage(CommandSender sender, String[] args) {
+        int page = 1;
+        if (args.length >= 3) {
+            try {
+                page = Integer.parseInt(args[2]);
+            } catch (NumberFormatException e) {
+                sender.sendMessage("§cНеверный номер страницы: " + args[2]);
+                return;
+            }
+        }
+
+        // В памяти лежат только лучшие значения: страницу собирает поток записи, ответ приходит в глобальный поток
+        TrackPlayer plugin = TrackPlayer.getInstance();
+        int current = Math.max(1, Math.min(page, Integer.MAX_VALUE / PAGE_SIZE - 1));
+        int offset = (current - 1) * PAGE_SIZE;
+        plugin.getTop(StatRegistry.MOB_KILLS, offset, PAGE_SIZE).whenComplete((entries, error) -> plugin.getScheduler().run(() -> {
+            if (error != null) {
+                sender.sendMessage("§cНе удалось загрузить рейтинг, попробуйте позже");
+                return;
+            }
+            sendMobKillsPage(sender, current, offset, entries);
+        }));
+    }
+
+    private void sendMobKillsPage(CommandSender sender, int page, int offset, List<Leaderboard.Entry> entries) {
+        sender.sendMessage("§6=== Список убийств мобов игроками (страница " + page + ") ===");
+        if (entries.isEmpty()) {
+            sender.sendMessage("§7На этой странице никого нет");
+            return;
+        }
+        for (int i = 0; i < entries.size(); i++) {
+            Leaderboard.Entry entry = entries.get(i);
+            String playerName = TrackPlayer.getInstance().getPlayerNames().get(entry.uuid());
+            sender.sendMessage("§7" + (offset + i + 1) + ". " + (playerName != null ? playerName : "Unknown") +
+                    ": §f" + entry.value());
+        }
+        if (entries.size() == PAGE_SIZE) {
+            sender.sendMessage("§7Следующая страница: §f/trackplayer admin list " + (page + 1));
+        }
+    }
+
     private void handleAdminCommands(CommandSender sender, String[] args) {
         if (args.length < 2) {
-            sender.sendMessage("§cИспользуйте: /trackplayer admin <list|resetmobs|save|status>");
+            sender.sendMessage("§cИспользуйте: /trackplayer admin <list [страница]|resetmobs|save|status>");
             return;
         }
 
         switch (args[1].toLowerCase()) {
             case "list":
-                Map<UUID, Integer> mobKills = TrackPlayer.getInstance().getPlayerMobKills();
-                sender.sendMessage("§6=== Список убийств мобов игроками ===");
-                mobKills.entrySet().stream()
-                        .sorted((a, b) -> b.getValue().compareTo(a.getValue()))
-                        .forEach(entry -> {
-                            String playerName = Bukkit.getOfflinePlayer(entry.getKey()).getName();
-                            sender.sendMessage("§7" + (playerName != null ? playerName : "Unknown") +
-                                    ": §f" + entry.getValue());
-                        });
+                if (!TrackPlayer.getInstance().isStorageReady()) {
+                    sender.sendMessage("§cДанные игроков еще загружаются, попробуйте позже");
+                    return;
+                }
+                showMobKillsPage(sender, args);
                 break;
             case "resetmobs":
+                if (!TrackPlayer.getInstance().isStorageReady()) {
+                    sender.sendMessage("§cДанные игроков еще загружаются, попробуйте позже");
+                    return;
+                }
                 TrackPlayer.getInstance().resetAllMobKills();
                 sender.sendMessage("§aСтатистика убийств мобов сброшена для всех игроков!");
                 break;
@@ -6,11 +6,25 @@ import org.bukkit.entity.Player;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.Locale;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 
 public class StatsPlaceholder extends PlaceholderExpansion {
 
+    // Плейсхолдеры приходят из конфигов табло и чата, поэтому различных строк немного
+    private static final int MAX_RESOLVERS = 4096;
+
+    // Разобранный плейсхолдер; resolver == null у неизвестного, registrySize - число статистик при разборе,
+    // perPlayer - значение зависит от игрока (рейтинги top_ запрашиваются и без игрока: голограммы, консоль)
+    private record Compiled(Function<UUID, String> resolver, boolean perPlayer, int registrySize) {
+    }
+
     private final TrackPlayer plugin;
+    // Строка плейсхолдера как есть -> разобранный вариант: разбор и toLowerCase выполняются один раз
+    private final Map<String, Compiled> resolvers = new ConcurrentHashMap<>();
 
     public StatsPlaceholder() {
         this.plugin = TrackPlayer.getInstance();
@@ -43,16 +57,83 @@ public class StatsPlaceholder extends PlaceholderExpansion {
 
     @Override
     public @Nullable String onRequest(OfflinePlayer player, @NotNull String params) {
-        if (player == null) return "0";
+        String result = resolve(player, params);
+        plugin.getMetrics().recordPlaceholder(result != null);
+        return result;
+    }
+
+    private String resolve(OfflinePlayer player, String params) {
+        Compiled compiled = resolvers.get(params);
+        // Неизвестный плейсхолдер разбирается заново только после регистрации новых статистик
+        if (compiled == null || (compiled.resolver() == null && compiled.registrySize() != plugin.getStatRegistry().size())) {
+            compiled = compile(params);
+            if (resolvers.size() < MAX_RESOLVERS) {
+                resolvers.put(params, compiled);
+            }
+        }
+
+        if (compiled.resolver() == null) {
+            return null;
+        }
+        if (compiled.perPlayer()) {
+            return player != null ? compiled.resolver().apply(player.getUniqueId()) : "0";
+        }
+        return compiled.resolver().apply(null);
+    }
+
+    private Compiled compile(String params) {
+        String lower = params.toLowerCase(Locale.ROOT);
+        int registrySize = plugin.getStatRegistry().size();
+        if (lower.startsWith("top_")) {
+            return new Compiled(compileTop(lower.substring("top_".length())), false, registrySize);
+        }
+        return new Compiled(compilePlayer(lower), true, registrySize);
+    }
+
+    // Значение или место игрока; null, если такой статистики нет
+    private Function<UUID, String> compilePlayer(String lower) {
+        if (lower.startsWith("rank_")) {
+            StatType stat = plugin.getStatRegistry().get(lower.substring("rank_".length()));
+            return stat != null ? uuid -> plugin.getLeaderboardCache().getRank(stat, uuid) : null;
+        }
+
+        // Любая зарегистрированная статистика по ключу или псевдониму
+        StatType stat = plugin.getStatRegistry().get(lower);
+        return stat != null ? uuid -> plugin.getStatText(uuid, stat) : null;
+    }
+
+    // top_<stat>_<позиция>_name или top_<stat>_<позиция>_value
+    private Function<UUID, String> compileTop(String params) {
+        boolean name;
+        if (params.endsWith("_name")) {
+            name = true;
+        } else if (params.endsWith("_value")) {
+            name = false;
+        } else {
+            return null;
+        }
+
+        String rest = params.substring(0, params.lastIndexOf('_'));
+        int separator = rest.lastIndexOf('_');
+        if (separator <= 0) {
+            return null;
+        }
+
+        StatType stat = plugin.getStatRegistry().get(rest.substring(0, separator));
+        if (stat == null) {
+            return null;
+        }
 
-        UUID uuid = player.getUniqueId();
+        int position;
+        try {
+            position = Integer.parseInt(rest.substring(separator + 1));
+        } catch (NumberFormatException e) {
+            return null;
+        }
 
-        return switch (params.toLowerCase()) {
-            case "kills", "player_kills" -> String.valueOf(plugin.getPlayerKills(uuid));
-            case "deaths" -> String.valueOf(plugin.getDeaths(uuid));
-            case "mob_kills", "mobkills" -> String.valueOf(plugin.getMobKills(uuid));
-            default -> null;
-        };
+        return name
+                ? uuid -> plugin.getLeaderboardCache().getTopName(stat, position)
+                : uuid -> plugin.getLeaderboardCache().getTopValue(stat, position);
     }
 
     @Override
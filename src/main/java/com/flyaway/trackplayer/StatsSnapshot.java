@@ -0,0 +1,102 @@
+package com.flyaway.trackplayer;
+
+import java.util.Arrays;
+import java.util.UUID;
+
+// Неизменяемый снимок статистики игрока, передается из основного потока в поток записи.
+// Значения индексированы по id статистики; массив не меняется после создания снимка.
+public final class StatsSnapshot {
+
+    private static final long[] EMPTY = new long[0];
+
+    private final UUID uuid;
+    private final long[] values;
+    // Биты id статистик, изменившихся с прошлого снимка для сохранения; null - неизвестно, пишутся все значения
+    private final long[] changed;
+
+    public StatsSnapshot(UUID uuid, long[] values) {
+        this(uuid, values, null);
+    }
+
+    public StatsSnapshot(UUID uuid, long[] values, long[] changed) {
+        this.uuid = uuid;
+        this.values = values;
+        this.changed = changed;
+    }
+
+    public static StatsSnapshot empty(UUID uuid) {
+        return new StatsSnapshot(uuid, EMPTY);
+    }
+
+    public UUID uuid() {
+        return uuid;
+    }
+
+    public long get(StatType type) {
+        return get(type.id());
+    }
+
+    public long get(int id) {
+        return id < values.length ? values[id] : 0;
+    }
+
+    public int size() {
+        return values.length;
+    }
+
+    // Значение нужно записать в хранилище
+    public boolean isChanged(int id) {
+        if (changed == null) {
+            return true;
+        }
+        int word = id >>> 6;
+        return word < changed.length && (changed[word] & (1L << id)) != 0;
+    }
+
+    // Снимок заменяет еще не сохраненный прежний снимок игрока: в хранилище должны попасть изменения обоих
+    public StatsSnapshot supersede(StatsSnapshot older) {
+        if (changed == null) {
+            return this;
+        }
+        if (older.changed == null) {
+            return new StatsSnapshot(uuid, values);
+        }
+        long[] union = Arrays.copyOf(changed, Math.max(changed.length, older.changed.length));
+        for (int i = 0; i < older.changed.length; i++) {
+            union[i] |= older.changed[i];
+        }
+        return new StatsSnapshot(uuid, values, union);
+    }
+
+    // Копия без нулевых значений в конце массива (или этот же снимок)
+    public StatsSnapshot trimmed() {
+        int size = values.length;
+        while (size > 0 && values[size - 1] == 0) {
+            size--;
+        }
+        return size == values.length ? this : new StatsSnapshot(uuid, Arrays.copyOf(values, size), changed);
+    }
+
+    public StatsSnapshot with(StatType type, long value) {
+        long[] updated = Arrays.copyOf(values, Math.max(values.length, type.id() + 1));
+        updated[type.id()] = value;
+        if (changed == null) {
+            return new StatsSnapshot(uuid, updated);
+        }
+        long[] mask = Arrays.copyOf(changed, Math.max(changed.length, (type.id() >>> 6) + 1));
+        mask[type.id() >>> 6] |= 1L << type.id();
+        return new StatsSnapshot(uuid, updated, mask);
+    }
+
+    public int deaths() {
+        return (int) StatRegistry.DEATHS.decode(get(StatRegistry.DEATHS));
+    }
+
+    public int playerKills() {
+        return (int) StatRegistry.PLAYER_KILLS.decode(get(StatRegistry.PLAYER_KILLS));
+    }
+
+    public int mobKills() {
+        return (int) StatRegistry.MOB_KILLS.decode(get(StatRegistry.MOB_KILLS));
+    }
+}
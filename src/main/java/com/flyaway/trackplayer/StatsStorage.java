@@ -0,0 +1,71 @@
+package com.flyaway.trackplayer;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.ObjLongConsumer;
+
+// Хранилище статистики. Методы записи вызываются только из потока записи,
+// методы чтения могут вызываться из любого потока.
+// Ключи статистик, найденные в хранилище при открытии, регистрируются в реестре.
+public interface StatsStorage {
+
+    String getName();
+
+    void open() throws IOException;
+
+    boolean isEmpty() throws IOException;
+
+    // Количество сохраненных игроков
+    int count() throws IOException;
+
+    // Снимок игрока или null, если игрок еще не сохранялся
+    StatsSnapshot load(UUID uuid) throws IOException;
+
+    // Снимки нескольких игроков; игроков, которые еще не сохранялись, в результате нет
+    default Map<UUID, StatsSnapshot> loadAll(Collection<UUID> uuids) throws IOException {
+        Map<UUID, StatsSnapshot> result = new HashMap<>();
+        for (UUID uuid : uuids) {
+            StatsSnapshot snapshot = load(uuid);
+            if (snapshot != null) {
+                result.put(uuid, snapshot);
+            }
+        }
+        return result;
+    }
+
+    // Обход всех ненулевых значений одной статистики
+    void forEachValue(StatType type, ObjLongConsumer<UUID> consumer) throws IOException;
+
+    // true, если лучшие значения и места по статистике хранилище находит по индексу, без обхода всех игроков
+    default boolean hasRankIndex(StatType type) {
+        return false;
+    }
+
+    // Лучшие значения статистики по убыванию, не больше limit; только при hasRankIndex
+    default List<Leaderboard.Entry> top(StatType type, int limit) throws IOException {
+        throw new UnsupportedOperationException();
+    }
+
+    // Число игроков со значением статистики больше value; только при hasRankIndex
+    default int countAbove(StatType type, long value) throws IOException {
+        throw new UnsupportedOperationException();
+    }
+
+    // Наибольший номер сброса среди сохраненных значений статистики (у оконных - номер периода)
+    default long maxEpoch(StatType type) throws IOException {
+        long[] max = {0};
+        forEachValue(type, (uuid, raw) -> max[0] = Math.max(max[0], WindowClock.tag(raw)));
+        return max[0];
+    }
+
+    // Сохраняет снимки и возвращает объем записанных данных в байтах
+    long save(Collection<StatsSnapshot> snapshots) throws IOException;
+
+    void resetAll(StatType type) throws IOException;
+
+    void close();
+}
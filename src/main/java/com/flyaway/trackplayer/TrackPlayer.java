@@ -1,32 +1,103 @@
 package com.flyaway.trackplayer;
 
-import org.bukkit.plugin.java.JavaPlugin;
-import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.plugin.java.JavaPlugin;
+import org.bukkit.OfflinePlayer;
+import org.bukkit.entity.EntityType;
 import org.bukkit.entity.Player;
 import org.bukkit.event.Listener;
 import org.bukkit.event.EventHandler;
-import org.bukkit.event.entity.PlayerDeathEvent;
-import org.bukkit.event.entity.EntityDeathEvent;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.HandlerList;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
 import org.bukkit.event.player.PlayerJoinEvent;
 import org.bukkit.event.player.PlayerQuitEvent;
-import org.bukkit.entity.EntityType;
-import org.bukkit.scheduler.BukkitRunnable;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.function.IntToLongFunction;
+import java.util.function.ObjLongConsumer;
 import java.util.logging.Level;
 
 public class TrackPlayer extends JavaPlugin implements Listener {
 
     private static TrackPlayer instance;
-    private File dataFile;
-    private FileConfiguration playerData;
+    // Лучших сохраненных значений в рейтинге: хватает табло и первых страниц admin list, память рейтинга
+    // не зависит от числа игроков в хранилище
+    static final int LEADERBOARD_SIZE = 100;
+    // Встроенные и зарегистрированные другими плагинами статистики
+    private final StatRegistry statRegistry = new StatRegistry();
+    private final MobKillStats mobKillStats = new MobKillStats(statRegistry);
+    private WindowClock windowClock;
+    // Настройки и классификатор мобов заменяются целиком при перезагрузке
+    private volatile PluginSettings settings;
+    private volatile MobClassifier mobClassifier;
+    // Слушатели отдельных статистик: выключенная статистика не получает событий вовсе
+    private final DeathListener deathListener = new DeathListener(this);
+    private final PlayerKillListener playerKillListener = new PlayerKillListener(this);
+    private final MobKillListener mobKillListener = new MobKillListener(this);
+    private final Set<Listener> registeredStatListeners = new HashSet<>();
+    private StatsStorage storage;
+    private PlayerDataWriter dataWriter;
+    // Журнал изменений между сохранениями, null если выключен или хранилище еще загружается
+    private volatile StatJournal journal;
+    // Общее хранилище нескольких серверов, null в локальных режимах
+    private NetworkStatsStorage networkStorage;
     private final Map<UUID, PlayerStats> statsCache = new ConcurrentHashMap<>();
-    private int saveTaskId;
-    private boolean needsSave = false;
+    // Снимки, переданные в поток записи, но еще не сохраненные в хранилище
+    private final Map<UUID, StatsSnapshot> pendingWrites = new ConcurrentHashMap<>();
+    private OfflineStatsCache offlineCache;
+    // Игроки, чьи снимки уже загружаются в офлайн-кэш потоком записи
+    private final Set<UUID> offlineLoads = ConcurrentHashMap.newKeySet();
+    private PlayerNames playerNames;
+    private LoginPrefetcher loginPrefetcher;
+    // Вышедшие игроки, чьи записи остаются в кэше до окончания льготного периода (UUID -> момент выгрузки)
+    private final Map<UUID, Long> departingPlayers = new ConcurrentHashMap<>();
+    private final AtomicBoolean flushQueued = new AtomicBoolean(false);
+    // Сбросы статистик, которые поток записи применит к хранилищу перед следующим сохранением снимков
+    private final Set<StatType> pendingResets = ConcurrentHashMap.newKeySet();
+    // С прошлого подсчета игроков в хранилище были сохранения; подсчет идет по таймеру, а не после каждой записи
+    private final AtomicBoolean storedPlayersStale = new AtomicBoolean(false);
+    // Закрытие сегмента журнала и обход кэша - под записью, выгрузка записи в pendingWrites - под чтением:
+    // запись, пропущенная обходом, к концу обхода уже лежит в pendingWrites
+    private final ReentrantReadWriteLock snapshotLock = new ReentrantReadWriteLock();
+    // Сегменты журнала до этого номера включительно покрыты снимками в pendingWrites;
+    // номер публикуется после постановки снимков, поэтому поток записи видит их вместе с ним
+    private final AtomicLong coveredSegment = new AtomicLong(-1);
+    // Рейтинги по id статистики, изменения счетчиков переносятся в них раз в тик
+    private volatile Leaderboard[] leaderboards = new Leaderboard[0];
+    // Рейтинги, которые запрашивали плейсхолдеры или команды: только они получают лучшие значения из хранилища
+    private final Set<StatType> activeLeaderboards = ConcurrentHashMap.newKeySet();
+    private final LeaderboardQueue leaderboardQueue = new LeaderboardQueue();
+    private final LeaderboardCache leaderboardCache = new LeaderboardCache(this);
+    // Слушатели других плагинов, получают изменения статистики пачкой раз в тик
+    private final List<Consumer<List<StatChange>>> changeListeners = new CopyOnWriteArrayList<>();
+    private final PluginMetrics metrics = new PluginMetrics();
+    private MetricsExporter metricsExporter;
+    private final PluginScheduler scheduler = new PluginScheduler(this);
+    // Секунды с последней записи файла метрик
+    private int metricsFileSeconds;
+    private volatile boolean needsSave = false;
+    // Хранилище открыто и журнал применен; до этого записи игроков копят только приращения
+    private volatile boolean storageReady;
+    // Записи, созданные до окончания загрузки хранилища
+    private final Queue<Map.Entry<UUID, PlayerStats>> deferredLoads = new ConcurrentLinkedQueue<>();
+    // Длительность загрузки данных при запуске, -1 пока загрузка идет
+    private volatile long loadMillis = -1;
 
     @Override
     public void onEnable() {
@@ -34,15 +105,64 @@ public class TrackPlayer extends JavaPlugin implements Listener {
 
         // Создание файла конфигурации
         saveDefaultConfig();
+        loadSettings();
+        setupWindows();
 
-        // Загрузка данных игроков
-        setupDataFile();
+        // Подключение хранилища данных игроков; сами данные читаются в потоке записи
+        setupStorage();
 
         // Запуск периодического сохранения
         startAutoSave();
 
+        // Групповая запись журнала изменений; журнал появляется после загрузки хранилища
+        if (networkStorage == null && getConfig().getBoolean("journal.enabled", true)) {
+            long commitTicks = Math.max(1, getConfig().getLong("journal.commit-interval-ms", 1000) / 50);
+            scheduler.repeatAsync(() -> {
+                StatJournal current = journal;
+                if (current == null) {
+                    return;
+                }
+                // При заполненной очереди буфер журнала уйдет со следующей групповой записью
+                dataWriter.offer(() -> {
+                    try {
+                        current.commit();
+                    } catch (IOException e) {
+                        getLogger().log(Level.SEVERE, "Ошибка записи журнала изменений", e);
+                    }
+                });
+            }, commitTicks, commitTicks);
+        }
+
+        // Обмен приращениями с общим хранилищем
+        if (networkStorage != null) {
+            startNetworkSync();
+        }
+
+        // Запуск обновления рейтингов для плейсхолдеров
+        startLeaderboardRefresh();
+
+        // Перенос изменений счетчиков в рейтинги
+        scheduler.repeat(this::applyLeaderboardUpdates, 1, 1);
+
+        // Очистка предзагруженных данных игроков, которые так и не зашли
+        scheduler.repeatAsync(loginPrefetcher::purgeExpired, 20 * 30, 20 * 30);
+
+        // Выгрузка записей вышедших игроков после льготного периода
+        scheduler.repeat(this::evictDepartedPlayers, 20, 20);
+
+        // Смена периодов оконных статистик
+        scheduler.repeat(() -> {
+            for (StatWindow window : windowClock.tick()) {
+                rollOverWindow(window);
+            }
+        }, 20, 20);
+
+        // Выборка и экспорт метрик
+        startMetrics();
+
         // Регистрация событий
         getServer().getPluginManager().registerEvents(this, this);
+        updateStatListeners();
 
         // Инициализация онлайн игроков
         initializeOnlinePlayers();
@@ -63,13 +183,32 @@ public class TrackPlayer extends JavaPlugin implements Listener {
 
     @Override
     public void onDisable() {
-        // Останавливаем задачу автосохранения
-        if (saveTaskId != 0) {
-            getServer().getScheduler().cancelTask(saveTaskId);
+        // Останавливаем все задачи плагина
+        scheduler.cancelAll();
+        if (metricsExporter != null) {
+            metricsExporter.stop();
         }
 
-        // Сохраняем данные всех онлайн игроков и очищаем кэш
-        saveAllOnlinePlayersData();
+        // Сохраняем данные всех онлайн игроков и дожидаемся записи всей очереди
+        if (storage != null) {
+            // Загрузка при запуске еще идет: сохранить можно только записи, которые она догрузит
+            if (!storageReady && !dataWriter.awaitIdle(getConfig().getInt("writer-shutdown-timeout", 60))) {
+                getLogger().severe("Загрузка данных не завершилась, изменения во время загрузки не сохранены");
+            }
+            saveAllOnlinePlayersData();
+            // При остановке ждем места в очереди: снимки, не поставленные в нее автосохранением, уходят здесь
+            dataWriter.submit(this::flushPendingWrites);
+            dataWriter.submit(this::flushPlayerNames);
+            if (networkStorage != null) {
+                // Приращения уходят в общую базу даже без изменившихся снимков
+                dataWriter.submit(this::drainNetworkDeltas);
+            }
+            dataWriter.shutdown(getConfig().getInt("writer-shutdown-timeout", 60));
+            if (journal != null) {
+                journal.close();
+            }
+            storage.close();
+        }
         getLogger().info("TrackPlayer плагин выключен!");
     }
 
@@ -77,410 +216,1910 @@ public class TrackPlayer extends JavaPlugin implements Listener {
         return instance;
     }
 
-    private void setupDataFile() {
-        dataFile = new File(getDataFolder(), "playerdata.yml");
-        if (!dataFile.exists()) {
-            saveResource("playerdata.yml", false);
-        }
-        playerData = YamlConfiguration.loadConfiguration(dataFile);
+    private void loadSettings() {
+        settings = PluginSettings.load(getConfig());
+        mobClassifier = MobClassifier.load(getConfig().getConfigurationSection("hostile-mobs"), getLogger());
+        mobKillStats.registerAll(mobClassifier.getTrackedTypes());
     }
 
-    private void initializeOnlinePlayers() {
-        for (Player player : getServer().getOnlinePlayers()) {
-            getOrCreatePlayerStats(player.getUniqueId());
-        }
-        getLogger().info("Инициализированы данные для " + statsCache.size() + " онлайн игроков");
+    // Перечитывает config.yml и атомарно подменяет настройки, используемые в обработчиках событий
+    public void reloadPluginConfig() {
+        reloadConfig();
+        loadSettings();
+        updateStatListeners();
+
+        offlineCache.configure(
+                getConfig().getInt("offline-cache.max-size", 10000),
+                getConfig().getLong("offline-cache.expire-seconds", 300));
+        loginPrefetcher.configure(getConfig().getLong("prefetch-timeout", 60));
+        leaderboardCache.configure(
+                getConfig().getInt("placeholders.top-size", 10),
+                getConfig().getString("placeholders.empty-name", "---"),
+                getConfig().getString("placeholders.empty-value", "0"));
+
+        getLogger().info("Конфигурация перезагружена, враждебных типов мобов: " + mobClassifier.getHostileCount());
     }
 
-    private PlayerStats loadPlayerData(UUID uuid) {
-        String path = "players." + uuid.toString();
-        if (playerData.contains(path)) {
-            int deaths = playerData.getInt(path + ".deaths", 0);
-            int playerKills = playerData.getInt(path + ".player_kills", 0);
-            int mobKills = playerData.getInt(path + ".mob_kills", 0);
-            return new PlayerStats(deaths, playerKills, mobKills);
+    // Оконные статистики регистрируются один раз при запуске, до открытия хранилища
+    private void setupWindows() {
+        windowClock = WindowClock.load(getConfig().getConfigurationSection("windows"), getLogger());
+
+        List<StatWindow> windows = new ArrayList<>();
+        for (String name : getConfig().getStringList("windows.enabled")) {
+            StatWindow window = StatWindow.fromKey(name.trim());
+            if (window != null) {
+                windows.add(window);
+            } else {
+                getLogger().warning("Неизвестный период в настройках windows.enabled: " + name);
+            }
         }
-        return new PlayerStats();
-    }
 
-    public PlayerStats getOrCreatePlayerStats(UUID uuid) {
-        synchronized (statsCache) {
-            return statsCache.computeIfAbsent(uuid, this::loadPlayerData);
+        for (String key : getConfig().getStringList("windows.stats")) {
+            StatType stat;
+            try {
+                stat = statRegistry.register(key.trim(), null);
+            } catch (IllegalArgumentException e) {
+                getLogger().warning("Неверный ключ статистики в настройках windows.stats: " + key);
+                continue;
+            }
+            for (StatWindow window : windows) {
+                statRegistry.registerWindowed(stat, window);
+            }
         }
     }
 
-    public void removePlayerStats(UUID uuid) {
-        synchronized (statsCache) {
-            PlayerStats stats = statsCache.remove(uuid);
-            if (stats != null) {
-                savePlayerDataToFile(uuid, stats);
+    // Новый период: рейтинг текущей корзины становится рейтингом прошлого периода, текущий начинается с нуля.
+    // Значения игроков не трогаются - устаревший номер периода сам по себе означает ноль
+    private void rollOverWindow(StatWindow window) {
+        for (StatType stat : statRegistry.getAll()) {
+            if (stat.window() == window && !stat.isPrevious()) {
+                getLeaderboard(stat).moveTo(getLeaderboard(stat.counterpart()));
             }
         }
+        getLogger().info("Начался новый период статистики: " + window.displayName());
     }
 
-    private void startAutoSave() {
-        int saveInterval = getConfig().getInt("auto-save-interval", 5) * 60 * 20;
+    // Регистрирует включенные и снимает выключенные слушатели статистик
+    private void updateStatListeners() {
+        setListenerRegistered(deathListener, settings.trackDeaths());
+        setListenerRegistered(playerKillListener, settings.trackPlayerKills());
+        setListenerRegistered(mobKillListener, settings.trackMobKills());
+    }
 
-        saveTaskId = new BukkitRunnable() {
-            @Override
-            public void run() {
-                if (needsSave) {
-                    saveAllOnlinePlayersData();
-                    if (getConfig().getBoolean("debug", false)) {
-                        getLogger().info("Данные автоматически сохранены (" + statsCache.size() + " игроков)");
-                    }
+    private void setListenerRegistered(Listener listener, boolean enabled) {
+        if (enabled && registeredStatListeners.add(listener)) {
+            getServer().getPluginManager().registerEvents(listener, this);
+        } else if (!enabled && registeredStatListeners.remove(listener)) {
+            HandlerList.unregisterAll(listener);
+        }
+    }
+
+    public PluginSettings getSettings() {
+        return settings;
+    }
+
+    public MobClassifier getMobClassifier() {
+        return mobClassifier;
+    }
+
+    private void setupStorage() {
+        long startNanos = System.nanoTime();
+        dataWriter = new PlayerDataWriter(getLogger(), getConfig().getInt("writer-queue-size", 64));
+        offlineCache = new OfflineStatsCache(
+                getConfig().getInt("offline-cache.max-size", 10000),
+                getConfig().getLong("offline-cache.expire-seconds", 300));
+        loginPrefetcher = new LoginPrefetcher(getConfig().getLong("prefetch-timeout", 60));
+        playerNames = new PlayerNames(new File(getDataFolder(), "names.bin"), getLogger());
+        File yamlFile = new File(getDataFolder(), "playerdata.yml");
+        String type = getConfig().getString("storage.type", "yaml").toLowerCase();
+
+        switch (type) {
+            case "sqlite" -> storage = new SqliteStatsStorage(
+                    new File(getDataFolder(), getConfig().getString("storage.sqlite-file", "playerdata.db")),
+                    statRegistry, getLogger());
+            case "binary" -> storage = new BinaryStatsStorage(
+                    new File(getDataFolder(), getConfig().getString("storage.binary-file", "playerdata.bin")),
+                    statRegistry, getLogger());
+            case "network" -> {
+                String url = getConfig().getString("storage.network.url", "");
+                if (url.isEmpty()) {
+                    url = "jdbc:sqlite:" + new File(getDataFolder(), "shared.db").getPath();
+                }
+                networkStorage = new NetworkStatsStorage(url,
+                        getConfig().getString("storage.network.user", ""),
+                        getConfig().getString("storage.network.password", ""),
+                        statRegistry, getLogger());
+                storage = networkStorage;
+            }
+            default -> {
+                if (!yamlFile.exists()) {
+                    saveResource("playerdata.yml", false);
                 }
+                storage = new YamlStatsStorage(yamlFile, statRegistry, getLogger());
             }
-        }.runTaskTimer(this, saveInterval, saveInterval).getTaskId();
+        }
 
-        getLogger().info("Автосохранение данных каждые " + getConfig().getInt("auto-save-interval", 5) + " минут");
+        // Номера сбросов нужны до чтения любых значений и до первых событий
+        loadEpochs();
+
+        // Первая задача потока записи: сохранения и обмены, поставленные позже, выполнятся после загрузки
+        dataWriter.submit(() -> loadStorage(yamlFile, startNanos));
+        getLogger().info("Хранилище данных: " + storage.getName() + " (загружается в фоне)");
     }
 
-    private void saveAllOnlinePlayersData() {
-        synchronized (statsCache) {
-            for (Map.Entry<UUID, PlayerStats> entry : statsCache.entrySet()) {
-                savePlayerDataToFile(entry.getKey(), entry.getValue());
+    // Поток записи: открытие хранилища, журнал, затем записи онлайн игроков и только потом рейтинги
+    private void loadStorage(File yamlFile, long startNanos) {
+        try {
+            storage.open();
+
+            // В общую базу данные каждого сервера переносятся один раз по его отметке, в локальное хранилище - только в пустое
+            if (networkStorage != null ? yamlFile.exists() : !(storage instanceof YamlStatsStorage) && storage.isEmpty() && yamlFile.exists()) {
+                migrateFromYaml(yamlFile, storage);
+            }
+
+            // Изменения, не попавшие в хранилище до остановки или сбоя, применяются до чтения записей
+            // В общем хранилище абсолютные значения журнала затерли бы приращения других серверов
+            if (networkStorage != null && getConfig().getBoolean("journal.enabled", true)) {
+                getLogger().info("Журнал изменений не используется с общим хранилищем");
+            } else if (getConfig().getBoolean("journal.enabled", true)) {
+                StatJournal replayed = new StatJournal(new File(getDataFolder(), "journal"), statRegistry, getLogger(),
+                        metrics.getJournalLocks());
+                replayed.replay(storage);
+                journal = replayed;
+            }
+
+            for (StatType stat : statRegistry.restoreEpochs(storage)) {
+                getLogger().warning("Номер сброса статистики " + stat.key() + " в " + epochsFile().getName() +
+                        " меньше, чем в хранилище: используется номер из хранилища (" + stat.epoch() + ")");
+                saveEpochs(stat, stat.epoch());
             }
-            needsSave = false;
+        } catch (IOException e) {
+            getLogger().log(Level.SEVERE, "Не удалось открыть хранилище данных (" + storage.getName() + ")", e);
+            scheduler.run(() -> getServer().getPluginManager().disablePlugin(this));
+            return;
+        }
+
+        try {
+            // Первый запуск с индексом имен: имена берутся из данных сервера один раз. Список офлайн игроков
+            // Bukkit читается только в основном потоке, в файл имена допишет следующая запись имен
+            if (!playerNames.load()) {
+                scheduler.run(this::indexOfflinePlayers);
+            }
+        } catch (IOException e) {
+            getLogger().log(Level.WARNING, "Ошибка чтения имен игроков", e);
         }
-    }
 
-    private void savePlayerDataToFile(UUID uuid, PlayerStats stats) {
-        String path = "players." + uuid.toString();
-        playerData.set(path + ".deaths", stats.getDeaths());
-        playerData.set(path + ".player_kills", stats.getPlayerKills());
-        playerData.set(path + ".mob_kills", stats.getMobKills());
+        // Сначала догружаются онлайн игроки и все, чья статистика менялась во время загрузки
+        storageReady = true;
+        int players = completeDeferredLoads();
+        long playersMillis = (System.nanoTime() - startNanos) / 1_000_000;
 
+        // Рейтинги из хранилища не заполняются заранее: лучшие значения читаются при первом запросе рейтинга
         try {
-            playerData.save(dataFile);
+            metrics.setStoredPlayers(storage.count());
         } catch (IOException e) {
-            getLogger().log(Level.SEVERE, "Ошибка сохранения данных игрока " + uuid, e);
+            getLogger().log(Level.WARNING, "Ошибка подсчета игроков в хранилище " + storage.getName(), e);
         }
-    }
+        leaderboardCache.refresh();
 
-    public void forceSave() {
-        saveAllOnlinePlayersData();
-        getLogger().info("Принудительное сохранение данных выполнено");
+        loadMillis = (System.nanoTime() - startNanos) / 1_000_000;
+        getLogger().info("Данные загружены за " + loadMillis + " мс (игроков в хранилище: " + metrics.getStoredPlayers() +
+                ", онлайн записей догружено: " + players + " за " + playersMillis + " мс)");
     }
 
-    public void markDataDirty() {
-        this.needsSave = true;
+    // Запись создана до окончания загрузки: ее догрузит загрузчик
+    private void deferLoad(UUID uuid, PlayerStats stats) {
+        deferredLoads.add(Map.entry(uuid, stats));
+        // Загрузка могла закончиться после проверки, но до добавления в очередь
+        if (storageReady) {
+            scheduler.runAsync(this::completeDeferredLoads);
+        }
     }
 
-    @EventHandler
-    public void onPlayerJoin(PlayerJoinEvent event) {
-        Player player = event.getPlayer();
-        getOrCreatePlayerStats(player.getUniqueId());
-        if (getConfig().getBoolean("debug", false)) {
-            getLogger().info("Данные загружены для игрока: " + player.getName());
+    // Каждую запись из очереди забирает ровно один поток
+    private int completeDeferredLoads() {
+        int completed = 0;
+        Map.Entry<UUID, PlayerStats> entry;
+        while ((entry = deferredLoads.poll()) != null) {
+            completeLoad(entry.getKey(), entry.getValue());
+            completed++;
         }
+        return completed;
     }
 
-    @EventHandler
-    public void onPlayerQuit(PlayerQuitEvent event) {
-        Player player = event.getPlayer();
-        removePlayerStats(player.getUniqueId());
-        if (getConfig().getBoolean("debug", false)) {
-            getLogger().info("Данные сохранены и удалены из памяти для игрока: " + player.getName());
+    // Плейсхолдер или команда запросили рейтинг: при первом запросе поток записи загружает лучшие значения
+    public void requestLeaderboard(StatType stat) {
+        if (!storageReady || activeLeaderboards.contains(stat) || !activeLeaderboards.add(stat)) {
+            return;
+        }
+        // Очередь записи заполнена - рейтинг загрузится при следующем запросе
+        if (!dataWriter.offer(() -> seedLeaderboard(stat))) {
+            activeLeaderboards.remove(stat);
         }
     }
 
-    @EventHandler
-    public void onPlayerDeath(PlayerDeathEvent event) {
-        Player player = event.getEntity();
-        Player killer = player.getKiller();
+    // Табло плейсхолдеров может быть длиннее LEADERBOARD_SIZE
+    private int leaderboardSize() {
+        return Math.max(LEADERBOARD_SIZE, leaderboardCache.getTopSize());
+    }
 
-        incrementDeaths(player.getUniqueId());
+    // Поток записи: в рейтинг попадают не больше leaderboardSize() лучших сохраненных значений
+    private void seedLeaderboard(StatType stat) {
+        try {
+            int size = leaderboardSize();
+            List<Leaderboard.Entry> top = topStored(stat, size);
+            long floor = top.size() < size ? 0 : top.get(top.size() - 1).value();
+            // Значения загруженных и ожидающих записи игроков в рейтинге свежее сохраненных
+            getLeaderboard(stat).seed(top, floor, uuid -> statsCache.containsKey(uuid) || pendingWrites.containsKey(uuid));
+        } catch (IOException e) {
+            activeLeaderboards.remove(stat);
+            getLogger().log(Level.WARNING, "Ошибка чтения рейтинга " + stat.key() + " из хранилища " + storage.getName(), e);
+        }
+    }
 
-        if (killer != null) {
-            incrementPlayerKills(killer.getUniqueId());
+    // Поток записи: лучшие сохраненные значения по убыванию; без индекса в хранилище - обход с кучей на limit значений
+    private List<Leaderboard.Entry> topStored(StatType stat, int limit) throws IOException {
+        if (storage.hasRankIndex(stat)) {
+            return storage.top(stat, limit);
         }
+        PriorityQueue<Leaderboard.Entry> best = new PriorityQueue<>(Math.min(limit, LEADERBOARD_SIZE) + 1, Comparator.comparingLong(Leaderboard.Entry::value));
+        forEachStoredValue(stat, (uuid, value) -> {
+            if (value > 0 && (best.size() < limit || value > best.peek().value())) {
+                best.add(new Leaderboard.Entry(uuid, value));
+                if (best.size() > limit) {
+                    best.poll();
+                }
+            }
+        });
+        List<Leaderboard.Entry> top = new ArrayList<>(best);
+        top.sort(Comparator.comparingLong(Leaderboard.Entry::value).reversed().thenComparing(Leaderboard.Entry::uuid));
+        return top;
     }
 
-    @EventHandler
-    public void onEntityDeath(EntityDeathEvent event) {
-        Player killer = event.getEntity().getKiller();
+    // Поток записи: места игроков по сохраненным значениям - число игроков с большим значением плюс один, 0 - нет в рейтинге
+    Map<UUID, Integer> rankStored(StatType stat, Map<UUID, Long> values) throws IOException {
+        Map<UUID, Integer> ranks = new HashMap<>();
+        if (storage.hasRankIndex(stat)) {
+            for (Map.Entry<UUID, Long> entry : values.entrySet()) {
+                long value = entry.getValue();
+                ranks.put(entry.getKey(), value > 0 ? storage.countAbove(stat, value) + 1 : 0);
+            }
+            return ranks;
+        }
+
+        // Без индекса все запрошенные места считаются одним обходом: hits[j] - сохраненные значения,
+        // которые больше ровно j запрошенных
+        long[] sorted = values.values().stream().mapToLong(Long::longValue).filter(value -> value > 0).sorted().toArray();
+        int[] hits = new int[sorted.length + 1];
+        forEachStoredValue(stat, (uuid, value) -> hits[lowerBound(sorted, value)]++);
+        int[] above = new int[sorted.length];
+        int running = 0;
+        for (int i = sorted.length - 1; i >= 0; i--) {
+            running += hits[i + 1];
+            above[i] = running;
+        }
+        for (Map.Entry<UUID, Long> entry : values.entrySet()) {
+            long value = entry.getValue();
+            ranks.put(entry.getKey(), value > 0 ? above[lowerBound(sorted, value)] + 1 : 0);
+        }
+        return ranks;
+    }
 
-        if (killer != null && event.getEntityType() != EntityType.PLAYER) {
-            if (isHostileMob(event.getEntityType())) {
-                incrementMobKills(killer.getUniqueId());
+    // Число элементов меньше value
+    private static int lowerBound(long[] sorted, long value) {
+        int low = 0;
+        int high = sorted.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (sorted[middle] < value) {
+                low = middle + 1;
+            } else {
+                high = middle;
             }
         }
+        return low;
     }
 
-    private boolean isHostileMob(EntityType entityType) {
-        return switch (entityType) {
-            case ZOMBIE, DROWNED, HUSK, ZOMBIFIED_PIGLIN, ZOGLIN, SKELETON, STRAY, WITHER_SKELETON, PHANTOM, SPIDER,
-                 CAVE_SPIDER, SILVERFISH, ENDERMITE, CREEPER, ENDERMAN, WITCH, BLAZE, GHAST, MAGMA_CUBE, SLIME,
-                 GUARDIAN, ELDER_GUARDIAN, SHULKER, VEX, VINDICATOR, EVOKER, ILLUSIONER, PILLAGER, RAVAGER, HOGLIN,
-                 PIGLIN_BRUTE, WARDEN, BREEZE, ENDER_DRAGON, WITHER, PIGLIN -> true;
-            default -> {
-                if (getConfig().getBoolean("debug", false)) {
-                    getLogger().info("Неизвестный тип моба: " + entityType + " - не считается враждебным");
+    // Поток записи: распакованные сохраненные значения статистики
+    private void forEachStoredValue(StatType stat, ObjLongConsumer<UUID> consumer) throws IOException {
+        if (!stat.isWindowed()) {
+            storage.forEachValue(stat, (uuid, raw) -> consumer.accept(uuid, stat.decode(raw)));
+        } else if (!stat.isPrevious()) {
+            storage.forEachValue(stat, (uuid, packed) -> consumer.accept(uuid, windowClock.current(stat.window(), packed)));
+        } else {
+            // Прошлый период лежит либо в еще не перенесенной текущей корзине, либо в корзине прошлого периода;
+            // ненулевое значение есть только в одной из них
+            StatWindow window = stat.window();
+            storage.forEachValue(stat, (uuid, packed) -> consumer.accept(uuid, windowClock.previous(window, 0, packed)));
+            storage.forEachValue(stat.counterpart(), (uuid, packed) -> {
+                long value = windowClock.previous(window, packed, 0);
+                if (value > 0) {
+                    consumer.accept(uuid, value);
+                }
+            });
+        }
+    }
+
+    // Страница рейтинга, в том числе глубже значений в памяти: сохраненные значения читает поток записи,
+    // значения загруженных и недавно вышедших игроков берутся из рейтинга
+    public CompletableFuture<List<Leaderboard.Entry>> getTop(StatType stat, int offset, int limit) {
+        CompletableFuture<List<Leaderboard.Entry>> future = new CompletableFuture<>();
+        int depth = offset + limit;
+        boolean queued = dataWriter.offer(() -> {
+            try {
+                Map<UUID, Long> values = new HashMap<>();
+                for (Leaderboard.Entry entry : topStored(stat, depth)) {
+                    values.put(entry.uuid(), entry.value());
+                }
+                for (Leaderboard.Entry entry : getLeaderboard(stat).top(0, depth)) {
+                    values.put(entry.uuid(), entry.value());
                 }
-                yield false;
+                List<Leaderboard.Entry> merged = new ArrayList<>(values.size());
+                for (Map.Entry<UUID, Long> entry : values.entrySet()) {
+                    merged.add(new Leaderboard.Entry(entry.getKey(), entry.getValue()));
+                }
+                merged.sort(Comparator.comparingLong(Leaderboard.Entry::value).reversed().thenComparing(Leaderboard.Entry::uuid));
+                future.complete(List.copyOf(merged.subList(Math.min(offset, merged.size()), Math.min(depth, merged.size()))));
+            } catch (IOException e) {
+                future.completeExceptionally(e);
             }
-        };
+        });
+        // Очередь записи заполнена - страница из значений в памяти
+        if (!queued) {
+            future.complete(getLeaderboard(stat).top(offset, limit));
+        }
+        return future;
     }
 
-    // API методы
+    // Игроки ниже leaderboardSize(), которых нет в кэше, убираются из рейтинга; граница рейтинга поднимается
+    void trimLeaderboard(StatType stat) {
+        getLeaderboard(stat).trim(leaderboardSize(), statsCache::containsKey);
+    }
 
-    public void incrementDeaths(UUID uuid) {
-        synchronized (statsCache) {
-            PlayerStats stats = getOrCreatePlayerStats(uuid);
-            stats.incrementDeaths();
-            markDataDirty();
-        }
+    private File epochsFile() {
+        return new File(getDataFolder(), "resets.yml");
     }
 
-    public void incrementPlayerKills(UUID uuid) {
-        synchronized (statsCache) {
-            PlayerStats stats = getOrCreatePlayerStats(uuid);
-            stats.incrementPlayerKills();
-            markDataDirty();
+    private void loadEpochs() {
+        File file = epochsFile();
+        if (!file.exists()) {
+            return;
+        }
+        ConfigurationSection epochs = YamlConfiguration.loadConfiguration(file).getConfigurationSection("epochs");
+        if (epochs == null) {
+            return;
+        }
+        for (String key : epochs.getKeys(false)) {
+            try {
+                statRegistry.register(key, null).setEpoch(epochs.getInt(key));
+            } catch (IllegalArgumentException e) {
+                getLogger().warning("Неверный ключ статистики в " + file.getName() + ": " + key);
+            }
         }
     }
 
-    public void incrementMobKills(UUID uuid) {
-        synchronized (statsCache) {
-            PlayerStats stats = getOrCreatePlayerStats(uuid);
-            stats.incrementMobKills();
-            markDataDirty();
+    private void saveEpochs(StatType changed, int epoch) throws IOException {
+        YamlConfiguration config = new YamlConfiguration();
+        for (StatType stat : statRegistry.getAll()) {
+            int value = stat == changed ? epoch : stat.epoch();
+            if (value != 0) {
+                config.set("epochs." + stat.key(), value);
+            }
         }
+        config.save(epochsFile());
     }
 
-    public int getDeaths(UUID uuid) {
-        // Сначала проверяем онлайн игроков в кэше
-        synchronized (statsCache) {
-            PlayerStats stats = statsCache.get(uuid);
-            if (stats != null) {
-                return stats.getDeaths();
-            }
+    // Однократный перенос данных из playerdata.yml
+    private void migrateFromYaml(File yamlFile, StatsStorage target) throws IOException {
+        YamlStatsStorage yaml = new YamlStatsStorage(yamlFile, statRegistry, getLogger());
+        yaml.open();
+        if (yaml.isEmpty()) {
+            return;
         }
 
-        // Если нет в кэше, проверяем файл (для офлайн игроков)
-        return playerData.getInt("players." + uuid.toString() + ".deaths", 0);
+        if (target == networkStorage) {
+            // Общее хранилище принимает только приращения: значения этого сервера добавляются к данным остальных
+            List<StatsSnapshot> deltas = new ArrayList<>();
+            for (StatsSnapshot snapshot : yaml.getAll()) {
+                StatsSnapshot delta = StatsSnapshot.empty(snapshot.uuid());
+                for (StatType stat : statRegistry.getAll()) {
+                    long value = stat.isWindowed() ? 0 : stat.decode(snapshot.get(stat));
+                    if (value != 0) {
+                        delta = delta.with(stat, value);
+                    }
+                }
+                deltas.add(delta);
+            }
+            if (!networkStorage.importOnce(networkServerId(), deltas)) {
+                return;
+            }
+        } else {
+            target.save(yaml.getAll());
+        }
+        getLogger().info("Перенесены данные " + yaml.getAll().size() + " игроков из " + yamlFile.getName() +
+                " в хранилище " + target.getName() + " (исходный файл сохранен)");
     }
 
-    public int getPlayerKills(UUID uuid) {
-        // Сначала проверяем онлайн игроков в кэше
-        synchronized (statsCache) {
-            PlayerStats stats = statsCache.get(uuid);
-            if (stats != null) {
-                return stats.getPlayerKills();
-            }
+    // Имя сервера в общей базе: storage.network.server-id или случайный id, созданный при первом запуске
+    private String networkServerId() throws IOException {
+        String configured = getConfig().getString("storage.network.server-id", "");
+        if (!configured.isEmpty()) {
+            return configured;
+        }
+        File file = new File(getDataFolder(), "server-id");
+        if (file.exists()) {
+            return Files.readString(file.toPath()).trim();
         }
+        String generated = UUID.randomUUID().toString();
+        Files.writeString(file.toPath(), generated);
+        return generated;
+    }
 
-        // Если нет в кэше, проверяем файл
-        return playerData.getInt("players." + uuid.toString() + ".player_kills", 0);
+    // Записи онлайн игроков (перезагрузка плагина) создаются сразу и догружаются первыми после открытия хранилища
+    private void initializeOnlinePlayers() {
+        for (Player player : getServer().getOnlinePlayers()) {
+            playerNames.update(player.getUniqueId(), player.getName());
+            promotePlayerStats(player.getUniqueId());
+        }
+        getLogger().info("Инициализированы данные для " + statsCache.size() + " онлайн игроков");
     }
 
-    public int getMobKills(UUID uuid) {
-        // Сначала проверяем онлайн игроков в кэше
-        synchronized (statsCache) {
-            PlayerStats stats = statsCache.get(uuid);
-            if (stats != null) {
-                return stats.getMobKills();
-            }
+    // Запись из известного снимка без обращения к хранилищу, иначе недогруженная - ее догрузит scheduleLoad
+    private PlayerStats loadPlayerData(UUID uuid) {
+        if (!storageReady) {
+            return PlayerStats.unloaded();
         }
+        StatsSnapshot known = pendingWrites.get(uuid);
+        if (known == null) {
+            known = offlineCache.get(uuid);
+        }
+        // Пока игрок в кэше онлайн, офлайн-запись ему не нужна
+        offlineCache.invalidate(uuid);
+        return known != null ? new PlayerStats(known) : PlayerStats.unloaded();
+    }
 
-        // Если нет в кэше, проверяем файл
-        return playerData.getInt("players." + uuid.toString() + ".mob_kills", 0);
+    // Догрузка ставится один раз, сколько бы потоков ни обратились к недогруженной записи
+    private void scheduleLoad(UUID uuid, PlayerStats stats) {
+        if (!stats.claimLoad()) {
+            return;
+        }
+        if (storageReady) {
+            scheduler.runAsync(() -> completeLoad(uuid, stats));
+        } else {
+            deferLoad(uuid, stats);
+        }
     }
 
-    public Map<UUID, Integer> getPlayerMobKills() {
-        Map<UUID, Integer> result = new HashMap<>();
+    // Снимок игрока вне кэша без обращения к хранилищу - для основного потока (плейсхолдеры, команды, API).
+    // При промахе снимок загружается в офлайн-кэш потоком записи, а до этого игрок читается как пустой
+    private StatsSnapshot findOffline(UUID uuid) {
+        StatsSnapshot pending = pendingWrites.get(uuid);
+        if (pending != null) {
+            metrics.recordLookup(PluginMetrics.LookupPath.PENDING);
+            return pending;
+        }
+        if (!storageReady) {
+            return null;
+        }
 
-        // Сначала добавляем онлайн игроков из кэша
-        synchronized (statsCache) {
-            for (Map.Entry<UUID, PlayerStats> entry : statsCache.entrySet()) {
-                result.put(entry.getKey(), entry.getValue().getMobKills());
-            }
+        StatsSnapshot cached = offlineCache.get(uuid);
+        if (cached != null) {
+            metrics.recordLookup(PluginMetrics.LookupPath.OFFLINE_CACHE);
+            return cached;
         }
+        // При заполненной очереди загрузку поставит следующий промах
+        if (offlineLoads.add(uuid) && !dataWriter.offer(() -> loadOffline(uuid))) {
+            offlineLoads.remove(uuid);
+        }
+        return null;
+    }
 
-        // Затем добавляем офлайн игроков из файла (если их еще нет в результате)
-        if (playerData.contains("players")) {
-            for (String uuidStr : playerData.getConfigurationSection("players").getKeys(false)) {
-                try {
-                    UUID uuid = UUID.fromString(uuidStr);
-                    // Добавляем только если игрок не онлайн (нет в кэше)
-                    if (!result.containsKey(uuid)) {
-                        int mobKills = playerData.getInt("players." + uuidStr + ".mob_kills", 0);
-                        result.put(uuid, mobKills);
-                    }
-                } catch (IllegalArgumentException e) {
-                    getLogger().warning("Неверный UUID в файле данных: " + uuidStr);
-                }
+    // Поток записи: снимок из хранилища попадает в офлайн-кэш, если за это время не появился более свежий
+    private void loadOffline(UUID uuid) {
+        try {
+            metrics.recordLookup(PluginMetrics.LookupPath.STORAGE);
+            StatsSnapshot stored = storage.load(uuid);
+            if (!statsCache.containsKey(uuid) && !pendingWrites.containsKey(uuid)) {
+                offlineCache.putIfAbsent(uuid, stored);
             }
+        } catch (IOException e) {
+            getLogger().log(Level.SEVERE, "Ошибка загрузки данных игрока " + uuid, e);
+        } finally {
+            offlineLoads.remove(uuid);
         }
-        return result;
     }
 
-    public Map<UUID, Integer> getAllDeaths() {
-        Map<UUID, Integer> result = new HashMap<>();
+    // Последний известный снимок игрока вне кэша: ожидающие записи, офлайн-кэш, затем хранилище.
+    // Читает хранилище в вызывающем потоке, поэтому только для асинхронных потоков (предзагрузка, догрузка записи)
+    private StatsSnapshot findStored(UUID uuid) {
+        StatsSnapshot pending = pendingWrites.get(uuid);
+        if (pending != null) {
+            metrics.recordLookup(PluginMetrics.LookupPath.PENDING);
+            return pending;
+        }
+        // Хранилище еще не открыто
+        if (!storageReady) {
+            return null;
+        }
 
-        // Сначала онлайн игроки из кэша
-        synchronized (statsCache) {
-            for (Map.Entry<UUID, PlayerStats> entry : statsCache.entrySet()) {
-                result.put(entry.getKey(), entry.getValue().getDeaths());
-            }
+        StatsSnapshot cached = offlineCache.get(uuid);
+        if (cached != null) {
+            metrics.recordLookup(PluginMetrics.LookupPath.OFFLINE_CACHE);
+            return cached;
         }
 
-        // Затем офлайн игроки из файла
-        if (playerData.contains("players")) {
-            for (String uuidStr : playerData.getConfigurationSection("players").getKeys(false)) {
-                try {
-                    UUID uuid = UUID.fromString(uuidStr);
-                    if (!result.containsKey(uuid)) {
-                        int deaths = playerData.getInt("players." + uuidStr + ".deaths", 0);
-                        result.put(uuid, deaths);
-                    }
-                } catch (IllegalArgumentException e) {
-                    getLogger().warning("Неверный UUID в файле данных: " + uuidStr);
-                }
-            }
+        metrics.recordLookup(PluginMetrics.LookupPath.STORAGE);
+        try {
+            StatsSnapshot stored = storage.load(uuid);
+            offlineCache.put(uuid, stored);
+            return stored;
+        } catch (IOException e) {
+            getLogger().log(Level.SEVERE, "Ошибка загрузки данных игрока " + uuid, e);
+            return null;
         }
-        return result;
     }
 
-    public Map<UUID, Integer> getAllPlayerKills() {
-        Map<UUID, Integer> result = new HashMap<>();
+    public PlayerStats getOrCreatePlayerStats(UUID uuid) {
+        PlayerStats stats = statsCache.computeIfAbsent(uuid, this::loadPlayerData);
+        if (!stats.isLoaded()) {
+            scheduleLoad(uuid, stats);
+        }
+        return stats;
+    }
 
-        // Сначала онлайн игроки из кэша
-        synchronized (statsCache) {
-            for (Map.Entry<UUID, PlayerStats> entry : statsCache.entrySet()) {
-                result.put(entry.getKey(), entry.getValue().getPlayerKills());
-            }
+    // Вход игрока без обращения к хранилищу: снимок берется из предзагрузки,
+    // а если она не успела - запись создается пустой и догружается асинхронно
+    private void promotePlayerStats(UUID uuid) {
+        // Повторный вход в льготный период - запись еще в кэше и используется как есть
+        departingPlayers.remove(uuid);
+
+        StatsSnapshot pending = pendingWrites.get(uuid);
+        StatsSnapshot staged = loginPrefetcher.take(uuid);
+        StatsSnapshot known = pending != null ? pending : staged;
+
+        PlayerStats stats = statsCache.computeIfAbsent(uuid, id ->
+                known != null ? new PlayerStats(known) : PlayerStats.unloaded());
+        offlineCache.invalidate(uuid);
+
+        if (!stats.isLoaded()) {
+            scheduleLoad(uuid, stats);
         }
+    }
 
-        // Затем офлайн игроки из файла
-        if (playerData.contains("players")) {
-            for (String uuidStr : playerData.getConfigurationSection("players").getKeys(false)) {
-                try {
-                    UUID uuid = UUID.fromString(uuidStr);
-                    if (!result.containsKey(uuid)) {
-                        int playerKills = playerData.getInt("players." + uuidStr + ".player_kills", 0);
-                        result.put(uuid, playerKills);
+    // Выполняется асинхронно: события, пришедшие до загрузки, уже накоплены в записи как приращения
+    private void completeLoad(UUID uuid, PlayerStats stats) {
+        StatsSnapshot stored = findStored(uuid);
+        offlineCache.invalidate(uuid);
+        // Записи журнала и снимок вышедшего игрока не должны разойтись по разные стороны закрытия сегмента
+        snapshotLock.readLock().lock();
+        StatJournal current = journal;
+        if (current != null) {
+            // Изменения под блокировкой полосы идут в журнал после этих значений
+            current.lock(uuid);
+        }
+        try {
+            stats.mergeLoaded(stored, statRegistry);
+            if (current != null) {
+                // До загрузки запись хранила только приращения и в журнал не писалась
+                for (StatType stat : statRegistry.getAll()) {
+                    long raw = stats.get(stat.id());
+                    if (raw != 0) {
+                        current.append(uuid, stat, raw);
                     }
-                } catch (IllegalArgumentException e) {
-                    getLogger().warning("Неверный UUID в файле данных: " + uuidStr);
                 }
             }
-        }
-        return result;
-    }
 
-    public void resetAllMobKills() {
-        // Сбрасываем для онлайн игроков в кэше
-        synchronized (statsCache) {
-            for (PlayerStats stats : statsCache.values()) {
-                stats.setMobKills(0);
+            // Игрок успел выйти до окончания загрузки - сохраняем итог сами
+            if (statsCache.get(uuid) != stats) {
+                StatsSnapshot snapshot = stats.snapshot(uuid);
+                pendingWrites.merge(uuid, snapshot, TrackPlayer::supersede);
+                markDataDirty();
+            }
+        } finally {
+            if (current != null) {
+                current.unlock(uuid);
             }
+            snapshotLock.readLock().unlock();
         }
 
-        // Сбрасываем для всех игроков в файле
-        if (playerData.contains("players")) {
-            for (String uuidStr : playerData.getConfigurationSection("players").getKeys(false)) {
-                playerData.set("players." + uuidStr + ".mob_kills", 0);
-            }
+        for (StatType stat : statRegistry.getAll()) {
+            getLeaderboard(stat).update(uuid, valueOf(stat, stats));
         }
+    }
 
-        markDataDirty();
-        forceSave();
+    // Запись вышедшего игрока не выгружается сразу: быстрый перезаход (смена лобби, переподключение)
+    // застает ее в кэше, а итоговое состояние уходит на запись один раз при выгрузке
+    private void scheduleEviction(UUID uuid) {
+        long gracePeriod = settings.quitGracePeriod();
+        if (gracePeriod <= 0) {
+            removePlayerStats(uuid);
+            return;
+        }
+        departingPlayers.put(uuid, System.currentTimeMillis() + gracePeriod * 1000);
     }
 
-    public void resetAllDeaths() {
-        synchronized (statsCache) {
-            for (PlayerStats stats : statsCache.values()) {
-                stats.setDeaths(0);
-            }
+    private void evictDepartedPlayers() {
+        if (departingPlayers.isEmpty()) {
+            return;
         }
 
-        if (playerData.contains("players")) {
-            for (String uuidStr : playerData.getConfigurationSection("players").getKeys(false)) {
-                playerData.set("players." + uuidStr + ".deaths", 0);
+        long now = System.currentTimeMillis();
+        Iterator<Map.Entry<UUID, Long>> iterator = departingPlayers.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<UUID, Long> entry = iterator.next();
+            if (entry.getValue() <= now) {
+                iterator.remove();
+                removePlayerStats(entry.getKey());
             }
         }
-
-        markDataDirty();
-        forceSave();
     }
 
-    public void resetAllPlayerKills() {
-        synchronized (statsCache) {
-            for (PlayerStats stats : statsCache.values()) {
-                stats.setPlayerKills(0);
+    public void removePlayerStats(UUID uuid) {
+        departingPlayers.remove(uuid);
+        // Запись не должна пропасть и из кэша, и из pendingWrites на время обхода при сохранении
+        snapshotLock.readLock().lock();
+        try {
+            PlayerStats stats = statsCache.remove(uuid);
+            if (stats != null && !stats.isLoaded()) {
+                // Итог сохранит completeLoad после загрузки данных
+                return;
             }
+            if (stats != null && stats.isDirty()) {
+                // Снимок ждет ближайшего flush, до этого чтения берут его из pendingWrites
+                StatsSnapshot snapshot = stats.snapshot(uuid);
+                pendingWrites.merge(uuid, snapshot, TrackPlayer::supersede);
+                offlineCache.put(uuid, snapshot);
+                markDataDirty();
+            } else if (stats != null) {
+                offlineCache.put(uuid, stats.snapshot(uuid));
+            }
+        } finally {
+            snapshotLock.readLock().unlock();
         }
+    }
+
+    private void startAutoSave() {
+        int saveInterval = getConfig().getInt("auto-save-interval", 5) * 60 * 20;
 
-        if (playerData.contains("players")) {
-            for (String uuidStr : playerData.getConfigurationSection("players").getKeys(false)) {
-                playerData.set("players." + uuidStr + ".player_kills", 0);
+        scheduler.repeat(() -> {
+            // Изменившиеся записи определяются по флагу в самой записи
+            if (saveAllOnlinePlayersData() && settings.debug()) {
+                getLogger().info("Данные автоматически сохранены (" + statsCache.size() + " игроков)");
             }
-        }
+            if (playerNames.hasPending()) {
+                dataWriter.offer(this::flushPlayerNames);
+            }
+        }, saveInterval, saveInterval);
 
-        markDataDirty();
-        forceSave();
+        getLogger().info("Автосохранение данных каждые " + getConfig().getInt("auto-save-interval", 5) + " минут");
     }
 
-    public int getCachedPlayersCount() {
-        return statsCache.size();
+    // Приращения этого сервера регулярно сливаются в общую базу, а значения онлайн игроков
+    // обновляются итогами со всех серверов; рейтинги офлайн игроков перечитываются реже
+    private void startNetworkSync() {
+        long syncInterval = Math.max(1, getConfig().getLong("storage.network.sync-interval", 5)) * 20;
+        scheduler.repeatAsync(() -> {
+            if (storageReady) {
+                dataWriter.offer(this::syncNetworkTotals);
+            }
+        }, syncInterval, syncInterval);
+
+        long leaderboardInterval = Math.max(1, getConfig().getLong("storage.network.leaderboard-sync-interval", 60)) * 20;
+        scheduler.repeatAsync(() -> {
+            if (storageReady) {
+                dataWriter.offer(this::syncNetworkLeaderboards);
+            }
+        }, leaderboardInterval, leaderboardInterval);
+
+        getLogger().info("Общее хранилище: обмен приращениями каждые " + syncInterval / 20 + " сек.");
     }
 
-    public String getSaveStatus() {
-        return needsSave ? "Требуется сохранение" : "Все данные сохранены";
+    // Поток записи
+    private void drainNetworkDeltas() {
+        try {
+            if (networkStorage.drain() > 0) {
+                storedPlayersStale.set(true);
+            }
+        } catch (IOException e) {
+            getLogger().log(Level.SEVERE, "Ошибка отправки приращений в общее хранилище", e);
+        }
     }
 
-    // Класс для хранения статистики игрока
-    public static class PlayerStats {
-        private int deaths;
-        private int playerKills;
-        private int mobKills;
+    // Поток записи: после слива приращений читает итоги онлайн игроков со всех серверов
+    private void syncNetworkTotals() {
+        drainNetworkDeltas();
+        long drainCount = networkStorage.getDrainCount();
 
-        public PlayerStats() {
-            this(0, 0, 0);
+        Map<UUID, StatsSnapshot> totals = new HashMap<>();
+        for (Map.Entry<UUID, PlayerStats> entry : statsCache.entrySet()) {
+            if (!entry.getValue().isLoaded()) {
+                continue;
+            }
+            try {
+                StatsSnapshot total = networkStorage.load(entry.getKey());
+                totals.put(entry.getKey(), total != null ? total : StatsSnapshot.empty(entry.getKey()));
+            } catch (IOException e) {
+                getLogger().log(Level.WARNING, "Ошибка чтения итогов игрока " + entry.getKey() + " из общего хранилища", e);
+            }
         }
+        // Снимки офлайн игроков могли устареть из-за изменений на других серверах
+        offlineCache.invalidateAll();
 
-        public PlayerStats(int deaths, int playerKills, int mobKills) {
-            this.deaths = deaths;
-            this.playerKills = playerKills;
-            this.mobKills = mobKills;
+        if (!totals.isEmpty()) {
+            scheduler.run(() -> applyNetworkTotals(totals, drainCount));
         }
+    }
 
-        public void incrementDeaths() {
-            deaths++;
+    // Основной поток: значение игрока = итог в базе + еще не слитые приращения этого сервера
+    private void applyNetworkTotals(Map<UUID, StatsSnapshot> totals, long drainCount) {
+        // Буфер успели слить после чтения итогов - они уже не включают часть приращений, ждем следующего обмена
+        if (networkStorage.getDrainCount() != drainCount) {
+            return;
         }
+        for (Map.Entry<UUID, StatsSnapshot> entry : totals.entrySet()) {
+            UUID uuid = entry.getKey();
+            PlayerStats stats = statsCache.get(uuid);
+            if (stats == null || !stats.isLoaded()) {
+                continue;
+            }
 
-        public void incrementPlayerKills() {
-            playerKills++;
+            PlayerStats merged = new PlayerStats(entry.getValue());
+            merged.mergeLoaded(networkStorage.pendingDelta(uuid), statRegistry);
+            for (StatType stat : statRegistry.getAll()) {
+                long raw = merged.get(stat.id());
+                if (stats.get(stat.id()) != raw) {
+                    stats.set(stat, raw);
+                    getLeaderboard(stat).update(uuid, valueOf(stat, stats));
+                }
+            }
         }
+    }
 
-        public void incrementMobKills() {
-            mobKills++;
+    // Поток записи: запрошенные рейтинги перечитывают лучшие значения из общей базы,
+    // онлайн игроки остаются со значениями своих записей
+    private void syncNetworkLeaderboards() {
+        for (StatType stat : activeLeaderboards) {
+            seedLeaderboard(stat);
         }
+    }
 
-        public int getDeaths() {
-            return deaths;
+    // Скорость запросов считается раз в секунду; файл метрик переписывается раз в metrics.file-interval секунд,
+    // число игроков в хранилище - раз в минуту, если были сохранения
+    private void startMetrics() {
+        int port = getConfig().getInt("metrics.prometheus-port", 0);
+        String fileName = getConfig().getString("metrics.file", "");
+        metricsExporter = new MetricsExporter(this);
+        if (port > 0) {
+            try {
+                metricsExporter.start(port);
+                getLogger().info("Метрики Prometheus: http://127.0.0.1:" + port + "/metrics");
+            } catch (IOException e) {
+                getLogger().log(Level.WARNING, "Не удалось открыть порт метрик " + port, e);
+            }
         }
 
-        public int getPlayerKills() {
-            return playerKills;
-        }
+        File metricsFile = fileName.isEmpty() ? null : new File(getDataFolder(), fileName);
+        int fileInterval = Math.max(1, getConfig().getInt("metrics.file-interval", 10));
+        scheduler.repeatAsync(() -> {
+            metrics.sample();
+            if (metricsFile != null && ++metricsFileSeconds >= fileInterval) {
+                metricsFileSeconds = 0;
+                try {
+                    metricsExporter.writeFile(metricsFile);
+                } catch (IOException e) {
+                    getLogger().log(Level.WARNING, "Ошибка записи файла метрик " + metricsFile.getName(), e);
+                }
+            }
+        }, 20, 20);
 
-        public int getMobKills() {
-            return mobKills;
-        }
+        scheduler.repeatAsync(() -> {
+            if (storageReady && storedPlayersStale.compareAndSet(true, false) && !dataWriter.offer(this::refreshStoredPlayers)) {
+                storedPlayersStale.set(true);
+            }
+        }, 60 * 20, 60 * 20);
+    }
 
-        public void setDeaths(int deaths) {
-            this.deaths = deaths;
-        }
+    private void startLeaderboardRefresh() {
+        leaderboardCache.configure(
+                getConfig().getInt("placeholders.top-size", 10),
+                getConfig().getString("placeholders.empty-name", "---"),
+                getConfig().getString("placeholders.empty-value", "0"));
+        leaderboardCache.refresh();
 
-        public void setPlayerKills(int playerKills) {
-            this.playerKills = playerKills;
-        }
+        int refreshInterval = Math.max(1, getConfig().getInt("placeholders.refresh-interval", 10)) * 20;
+        scheduler.repeatAsync(leaderboardCache::refresh, refreshInterval, refreshInterval);
+    }
 
-        public void setMobKills(int mobKills) {
-            this.mobKills = mobKills;
+    // Пакетный доступ - для бенчмарка цикла сохранения
+    boolean saveAllOnlinePlayersData() {
+        // Флаг снимается до обхода: изменения во время обхода снова его поднимут
+        boolean changed = needsSave;
+        needsSave = false;
+
+        StatJournal current = journal;
+        long sealed = -1;
+        snapshotLock.writeLock().lock();
+        try {
+            // Журнал закрывается до обхода: на Folia счетчики меняются параллельно из потоков регионов,
+            // и все изменения закрытых сегментов к этому моменту уже есть в записях и попадут в снимки
+            if (current != null) {
+                sealed = current.seal();
+            }
+
+            // В глобальном потоке только снимаем неизменяемые снимки изменившихся записей
+            for (Map.Entry<UUID, PlayerStats> entry : statsCache.entrySet()) {
+                // Недогруженные записи содержат только приращения и не должны перезаписать хранилище
+                if (entry.getValue().isLoaded() && entry.getValue().isDirty()) {
+                    pendingWrites.merge(entry.getKey(), entry.getValue().snapshot(entry.getKey()), TrackPlayer::supersede);
+                    changed = true;
+                }
+            }
+        } finally {
+            snapshotLock.writeLock().unlock();
+        }
+        coveredSegment.accumulateAndGet(sealed, Math::max);
+
+        if (!changed) {
+            return false;
+        }
+
+        // Если запись уже стоит в очереди, она и так увидит свежие снимки. Основной поток не ждет места
+        // в очереди: снимки остаются в pendingWrites, и запись ставится заново в следующем цикле
+        if (flushQueued.compareAndSet(false, true) && !dataWriter.offer(this::flushPendingWrites)) {
+            flushQueued.set(false);
+            markDataDirty();
+        }
+        return true;
+    }
+
+    // Основной поток: имена из данных сервера для нового индекса
+    private void indexOfflinePlayers() {
+        for (OfflinePlayer player : getServer().getOfflinePlayers()) {
+            if (player.getName() != null) {
+                playerNames.update(player.getUniqueId(), player.getName());
+            }
+        }
+        getLogger().info("Создан индекс имен игроков: " + playerNames.size());
+        dataWriter.offer(this::flushPlayerNames);
+    }
+
+    // Поток записи; до загрузки индекса дописывать в файл нельзя
+    private void flushPlayerNames() {
+        if (!storageReady) {
+            return;
+        }
+        try {
+            playerNames.flush();
+        } catch (IOException e) {
+            getLogger().log(Level.WARNING, "Ошибка записи имен игроков", e);
+        }
+    }
+
+    // Новый снимок игрока вытесняет несохраненный прежний вместе с его списком изменившихся статистик
+    private static StatsSnapshot supersede(StatsSnapshot older, StatsSnapshot newer) {
+        return newer.supersede(older);
+    }
+
+    // Выполняется в потоке записи: одна пачка снимков на цикл сохранения
+    private void flushPendingWrites() {
+        flushQueued.set(false);
+        applyPendingResets();
+
+        // Номер читается до копирования: снимки, покрывающие его сегменты, уже в pendingWrites
+        // (или сохранены прошлой пачкой), более поздние сегменты не удаляются
+        long covered = coveredSegment.get();
+        List<StatsSnapshot> batch = new ArrayList<>(pendingWrites.values());
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        try {
+            long bytes = storage.save(batch);
+            long duration = System.nanoTime() - start;
+            dataWriter.recordFlush(duration, bytes);
+            metrics.recordFlush(duration);
+            for (StatsSnapshot snapshot : batch) {
+                // Более свежий снимок того же игрока остается до следующего flush
+                pendingWrites.remove(snapshot.uuid(), snapshot);
+            }
+            if (journal != null) {
+                journal.discardUpTo(covered);
+            }
+            storedPlayersStale.set(true);
+        } catch (IOException e) {
+            markDataDirty();
+            getLogger().log(Level.SEVERE, "Ошибка сохранения данных в хранилище " + storage.getName(), e);
+        }
+    }
+
+    // Поток записи: снимки в pendingWrites сняты после сброса, поэтому сброс в хранилище идет раньше их записи
+    private void applyPendingResets() {
+        if (pendingResets.isEmpty()) {
+            return;
+        }
+        for (StatType stat : List.copyOf(pendingResets)) {
+            pendingResets.remove(stat);
+            try {
+                storage.resetAll(stat);
+            } catch (IOException e) {
+                getLogger().log(Level.SEVERE, "Ошибка сброса статистики " + stat.key() + " в хранилище", e);
+            }
+        }
+        // Снимки, загруженные до завершения сброса, могли сохранить старые значения
+        offlineCache.invalidateAll();
+    }
+
+    // Поток записи: COUNT(DISTINCT uuid) в SQL-хранилищах читает всю таблицу, поэтому не чаще раза в минуту
+    private void refreshStoredPlayers() {
+        try {
+            metrics.setStoredPlayers(storage.count());
+        } catch (IOException e) {
+            storedPlayersStale.set(true);
+            getLogger().log(Level.WARNING, "Ошибка подсчета игроков в хранилище " + storage.getName(), e);
+        }
+    }
+
+    public void forceSave() {
+        markDataDirty();
+        saveAllOnlinePlayersData();
+        getLogger().info("Принудительное сохранение данных поставлено в очередь записи");
+    }
+
+    public void markDataDirty() {
+        this.needsSave = true;
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onAsyncPreLogin(AsyncPlayerPreLoginEvent event) {
+        UUID uuid = event.getUniqueId();
+        if (event.getLoginResult() != AsyncPlayerPreLoginEvent.Result.ALLOWED) {
+            loginPrefetcher.discard(uuid);
+            return;
+        }
+
+        // Игрок еще в игре (повторный вход) - его актуальная запись уже в кэше;
+        // до окончания загрузки снимка нет, запись догрузит загрузчик
+        if (!statsCache.containsKey(uuid) && storageReady) {
+            loginPrefetcher.stage(uuid, findStored(uuid));
+        }
+    }
+
+    @EventHandler
+    public void onPlayerJoin(PlayerJoinEvent event) {
+        Player player = event.getPlayer();
+        playerNames.update(player.getUniqueId(), player.getName());
+        promotePlayerStats(player.getUniqueId());
+        if (settings.debug()) {
+            getLogger().info("Данные загружены для игрока: " + player.getName());
+        }
+    }
+
+    @EventHandler
+    public void onPlayerQuit(PlayerQuitEvent event) {
+        Player player = event.getPlayer();
+        scheduleEviction(player.getUniqueId());
+        if (settings.debug()) {
+            getLogger().info("Данные игрока " + player.getName() + " будут выгружены из памяти после льготного периода");
+        }
+    }
+
+    // API методы
+
+    public StatRegistry getStatRegistry() {
+        return statRegistry;
+    }
+
+    public WindowClock getWindowClock() {
+        return windowClock;
+    }
+
+    public MobKillStats getMobKillStats() {
+        return mobKillStats;
+    }
+
+    public long incrementStat(UUID uuid, StatType stat) {
+        return addStat(uuid, stat, 1);
+    }
+
+    public long addStat(UUID uuid, StatType stat, long delta) {
+        if (stat.isWindowed()) {
+            throw new IllegalArgumentException("Оконная статистика " + stat.key() + " обновляется вместе с " + stat.base().key());
+        }
+        return addStat(uuid, getOrCreatePlayerStats(uuid), stat, delta);
+    }
+
+    // Изменяет статистику и корзины ее окон в одной записи игрока
+    private long addStat(UUID uuid, PlayerStats stats, StatType stat, long delta) {
+        metrics.recordEvent(stat);
+        StatJournal current = journal;
+        if (current == null) {
+            long value = applyStat(stats, stat, delta);
+            if (networkStorage != null) {
+                networkStorage.recordDelta(uuid, stat, delta, windowClock);
+            }
+            if (stats.markChanged(stat)) {
+                leaderboardQueue.add(uuid, stats);
+            }
+            return value;
+        }
+
+        // Журнал хранит абсолютные значения и при чтении оставляет последнее: изменение и его запись
+        // идут под одной блокировкой, иначе параллельные приращения записались бы в обратном порядке
+        long value;
+        current.lock(uuid);
+        try {
+            value = applyStat(stats, stat, delta);
+            // Недогруженная запись хранит приращения; ее значения запишет completeLoad
+            if (stats.isLoaded()) {
+                current.append(uuid, stat, stats);
+            }
+        } finally {
+            current.unlock(uuid);
+        }
+        if (stats.markChanged(stat)) {
+            leaderboardQueue.add(uuid, stats);
+        }
+        return value;
+    }
+
+    private long applyStat(PlayerStats stats, StatType stat, long delta) {
+        long value = stats.add(stat, delta);
+        for (StatType window : stat.windows()) {
+            stats.addWindowed(window, windowClock.period(window.window()), delta);
+        }
+        return value;
+    }
+
+    // Глобальный поток, каждый тик (пакетный доступ - для бенчмарков): рейтинги получают текущие значения изменившихся счетчиков
+    void applyLeaderboardUpdates() {
+        List<StatChange> changes = changeListeners.isEmpty() ? null : new ArrayList<>();
+        leaderboardQueue.drain(update -> update.stats().drainChanged(id -> {
+            StatType stat = statRegistry.byId(id);
+            if (stat != null) {
+                applyLeaderboardUpdate(update.uuid(), update.stats(), stat, changes);
+            }
+        }));
+        if (changes != null && !changes.isEmpty()) {
+            notifyChangeListeners(Collections.unmodifiableList(changes));
+        }
+    }
+
+    private void applyLeaderboardUpdate(UUID uuid, PlayerStats stats, StatType stat, List<StatChange> changes) {
+        Leaderboard leaderboard = getLeaderboard(stat);
+        long value = valueOf(stat, stats);
+        // Прирост считается от значения в рейтинге; у недогруженной записи счетчики хранят только приращения.
+        // Изменения, вернувшие прежнее значение за тик, дают нулевой прирост и пропускаются
+        if (changes != null && stats.isLoaded()) {
+            long delta = value - leaderboard.getValue(uuid);
+            if (delta != 0) {
+                changes.add(new StatChange(uuid, stat, delta, value));
+            }
+        }
+        leaderboard.update(uuid, value);
+        for (StatType window : stat.windows()) {
+            getLeaderboard(window).update(uuid, valueOf(window, stats));
+        }
+    }
+
+    private void notifyChangeListeners(List<StatChange> changes) {
+        for (Consumer<List<StatChange>> listener : changeListeners) {
+            try {
+                listener.accept(changes);
+            } catch (RuntimeException e) {
+                getLogger().log(Level.SEVERE, "Ошибка в слушателе изменений статистики", e);
+            }
+        }
+    }
+
+    // Слушатель вызывается в глобальном потоке раз в тик со всеми изменениями за тик, а не на каждое событие
+    public void addStatChangeListener(Consumer<List<StatChange>> listener) {
+        changeListeners.add(listener);
+    }
+
+    public void removeStatChangeListener(Consumer<List<StatChange>> listener) {
+        changeListeners.remove(listener);
+    }
+
+    // Снимки нескольких игроков за один проход: кэш, ожидающие записи и офлайн-кэш - сразу,
+    // остальные одной пачкой из хранилища в потоке записи. Игрок без данных получает пустой снимок.
+    // Значения в снимках сырые, их распаковывает getStat(snapshot, stat)
+    public CompletableFuture<Map<UUID, StatsSnapshot>> getStats(Collection<UUID> uuids) {
+        Map<UUID, StatsSnapshot> result = new HashMap<>();
+        List<UUID> missing = new ArrayList<>();
+        for (UUID uuid : uuids) {
+            StatsSnapshot known = findKnown(uuid);
+            if (known != null) {
+                result.put(uuid, known);
+            } else {
+                missing.add(uuid);
+            }
+        }
+        if (missing.isEmpty()) {
+            return CompletableFuture.completedFuture(Collections.unmodifiableMap(result));
+        }
+
+        // Задачи потока записи выполняются по порядку, поэтому хранилище к этому моменту уже загружено
+        CompletableFuture<Map<UUID, StatsSnapshot>> future = new CompletableFuture<>();
+        // Вызывающий поток не ждет места в очереди записи
+        boolean queued = dataWriter.offer(() -> {
+            try {
+                // Пока задача ждала очереди, игроки могли зайти или попасть в ожидающие записи
+                List<UUID> unknown = new ArrayList<>();
+                for (UUID uuid : missing) {
+                    StatsSnapshot known = findKnown(uuid);
+                    if (known != null) {
+                        result.put(uuid, known);
+                    } else {
+                        unknown.add(uuid);
+                    }
+                }
+                if (!unknown.isEmpty() && storageReady) {
+                    metrics.recordLookup(PluginMetrics.LookupPath.STORAGE);
+                    Map<UUID, StatsSnapshot> stored = storage.loadAll(unknown);
+                    for (UUID uuid : unknown) {
+                        StatsSnapshot snapshot = stored.get(uuid);
+                        offlineCache.put(uuid, snapshot);
+                        result.put(uuid, snapshot != null ? snapshot : StatsSnapshot.empty(uuid));
+                    }
+                } else {
+                    // Загрузка хранилища завершилась ошибкой
+                    for (UUID uuid : unknown) {
+                        result.put(uuid, StatsSnapshot.empty(uuid));
+                    }
+                }
+                future.complete(Collections.unmodifiableMap(result));
+            } catch (IOException | RuntimeException e) {
+                future.completeExceptionally(e);
+            }
+        });
+        if (!queued) {
+            future.completeExceptionally(new RejectedExecutionException("Очередь записи заполнена"));
+        }
+        return future;
+    }
+
+    // Снимок игрока без обращения к хранилищу или null
+    private StatsSnapshot findKnown(UUID uuid) {
+        PlayerStats stats = statsCache.get(uuid);
+        // Недогруженная запись хранит только приращения
+        if (stats != null && stats.isLoaded()) {
+            metrics.recordLookup(PluginMetrics.LookupPath.ONLINE);
+            return stats.peek(uuid);
+        }
+        StatsSnapshot pending = pendingWrites.get(uuid);
+        if (pending != null) {
+            metrics.recordLookup(PluginMetrics.LookupPath.PENDING);
+            return pending;
+        }
+        if (!storageReady) {
+            return null;
+        }
+        StatsSnapshot cached = offlineCache.get(uuid);
+        if (cached != null) {
+            metrics.recordLookup(PluginMetrics.LookupPath.OFFLINE_CACHE);
+        }
+        return cached;
+    }
+
+    // Значение статистики из снимка getStats: сбросы и оконные статистики учитываются так же, как в getStat(uuid, stat)
+    public long getStat(StatsSnapshot snapshot, StatType stat) {
+        return valueOf(stat, snapshot::get);
+    }
+
+    // Значение статистики строкой для плейсхолдеров: у игроков в кэше без выделения памяти, пока значение не меняется
+    public String getStatText(UUID uuid, StatType stat) {
+        PlayerStats stats = statsCache.get(uuid);
+        if (stats != null) {
+            metrics.recordLookup(PluginMetrics.LookupPath.ONLINE);
+            return stats.render(stat, valueOf(stat, stats));
+        }
+        StatsSnapshot stored = findOffline(uuid);
+        return String.valueOf(stored != null ? valueOf(stat, stored::get) : 0);
+    }
+
+    public long getStat(UUID uuid, StatType stat) {
+        // Сначала проверяем онлайн игроков в кэше
+        PlayerStats stats = statsCache.get(uuid);
+        if (stats != null) {
+            metrics.recordLookup(PluginMetrics.LookupPath.ONLINE);
+            return valueOf(stat, stats);
+        }
+
+        // Если нет в кэше, берем известный снимок офлайн игрока; до его загрузки значение читается как 0
+        StatsSnapshot stored = findOffline(uuid);
+        return stored != null ? valueOf(stat, stored::get) : 0;
+    }
+
+    // Значение статистики по сырым значениям записи: оконные статистики распаковываются для текущего периода
+    private long valueOf(StatType stat, IntToLongFunction raw) {
+        if (!stat.isWindowed()) {
+            return stat.decode(raw.applyAsLong(stat.id()));
+        }
+        if (stat.isPrevious()) {
+            return windowClock.previous(stat.window(), raw.applyAsLong(stat.counterpart().id()), raw.applyAsLong(stat.id()));
+        }
+        return windowClock.current(stat.window(), raw.applyAsLong(stat.id()));
+    }
+
+    public void incrementDeaths(UUID uuid) {
+        incrementStat(uuid, StatRegistry.DEATHS);
+    }
+
+    public void incrementPlayerKills(UUID uuid) {
+        incrementStat(uuid, StatRegistry.PLAYER_KILLS);
+    }
+
+    public void incrementMobKills(UUID uuid) {
+        incrementStat(uuid, StatRegistry.MOB_KILLS);
+    }
+
+    // Общий счетчик и счетчик конкретного типа моба в одной записи игрока
+    public void incrementMobKill(UUID uuid, EntityType type) {
+        PlayerStats stats = getOrCreatePlayerStats(uuid);
+        addStat(uuid, stats, StatRegistry.MOB_KILLS, 1);
+        addStat(uuid, stats, mobKillStats.get(type), 1);
+    }
+
+    public long getMobKills(UUID uuid, EntityType type) {
+        return getStat(uuid, mobKillStats.get(type));
+    }
+
+    public int getDeaths(UUID uuid) {
+        return (int) getStat(uuid, StatRegistry.DEATHS);
+    }
+
+    public int getPlayerKills(UUID uuid) {
+        return (int) getStat(uuid, StatRegistry.PLAYER_KILLS);
+    }
+
+    public int getMobKills(UUID uuid) {
+        return (int) getStat(uuid, StatRegistry.MOB_KILLS);
+    }
+
+    public Map<UUID, Integer> getPlayerMobKills() {
+        return toIntValues(getAll(StatRegistry.MOB_KILLS));
+    }
+
+    public Map<UUID, Integer> getAllDeaths() {
+        return toIntValues(getAll(StatRegistry.DEATHS));
+    }
+
+    public Map<UUID, Integer> getAllPlayerKills() {
+        return toIntValues(getAll(StatRegistry.PLAYER_KILLS));
+    }
+
+    private static Map<UUID, Integer> toIntValues(Map<UUID, Long> values) {
+        Map<UUID, Integer> result = new HashMap<>(values.size() * 2);
+        values.forEach((uuid, value) -> result.put(uuid, (int) (long) value));
+        return result;
+    }
+
+    public Map<UUID, Long> getAll(StatType stat) {
+        Map<UUID, Long> result = new HashMap<>();
+
+        // Сначала ненулевые значения из хранилища; пока оно загружается - только записи в памяти
+        if (storageReady) {
+            try {
+                if (stat.isWindowed()) {
+                    // Значение за прошлый период зависит от обеих корзин
+                    StatType current = stat.isPrevious() ? stat.counterpart() : stat;
+                    Map<UUID, Long> currentPacked = new HashMap<>();
+                    Map<UUID, Long> lastPacked = new HashMap<>();
+                    storage.forEachValue(current, currentPacked::put);
+                    if (stat.isPrevious()) {
+                        storage.forEachValue(stat, lastPacked::put);
+                    }
+
+                    Set<UUID> players = new HashSet<>(currentPacked.keySet());
+                    players.addAll(lastPacked.keySet());
+                    for (UUID uuid : players) {
+                        long value = valueOf(stat, id -> (id == current.id() ? currentPacked : lastPacked).getOrDefault(uuid, 0L));
+                        if (value != 0) {
+                            result.put(uuid, value);
+                        }
+                    }
+                } else {
+                    // Значения из прошлых сбросов еще лежат в хранилище и читаются как ноль
+                    storage.forEachValue(stat, (uuid, raw) -> {
+                        long value = stat.decode(raw);
+                        if (value != 0) {
+                            result.put(uuid, value);
+                        }
+                    });
+                }
+            } catch (IOException e) {
+                getLogger().log(Level.SEVERE, "Ошибка чтения данных из хранилища " + storage.getName(), e);
+            }
+        }
+
+        // Затем еще не сохраненные снимки и онлайн игроки из кэша - они свежее
+        for (StatsSnapshot pending : pendingWrites.values()) {
+            result.put(pending.uuid(), valueOf(stat, pending::get));
+        }
+        for (Map.Entry<UUID, PlayerStats> entry : statsCache.entrySet()) {
+            result.put(entry.getKey(), valueOf(stat, entry.getValue()::get));
+        }
+        return result;
+    }
+
+    public void resetAllMobKills() {
+        resetAll(StatRegistry.MOB_KILLS);
+    }
+
+    public void resetAllDeaths() {
+        resetAll(StatRegistry.DEATHS);
+    }
+
+    public void resetAllPlayerKills() {
+        resetAll(StatRegistry.PLAYER_KILLS);
+    }
+
+    // Сброс за O(1): номер сброса статистики увеличивается, значения с прежним номером читаются как ноль
+    // и перезаписываются при следующем изменении, обходить игроков и переписывать хранилище не нужно
+    public void resetAll(StatType stat) {
+        // Общее хранилище разделяют несколько серверов, а номера сброса хранятся локально;
+        // у оконных статистик место номера сброса занимает номер периода
+        if (networkStorage != null || stat.isWindowed()) {
+            // Догружаемые записи получили бы сохраненные значения поверх сброса
+            if (!storageReady) {
+                getLogger().warning("Сброс статистики " + stat.key() + " недоступен до окончания загрузки данных");
+                return;
+            }
+            resetAllStored(stat);
+            return;
+        }
+
+        int epoch = stat.epoch() + 1;
+        try {
+            // Номер сброса записывается до применения: после него значения в журнале и хранилище упакованы с ним
+            saveEpochs(stat, epoch);
+        } catch (IOException e) {
+            getLogger().log(Level.SEVERE, "Не удалось сохранить номер сброса статистики " + stat.key(), e);
+            return;
+        }
+        stat.setEpoch(epoch);
+        getLeaderboard(stat).clear();
+        getLogger().info("Статистика " + stat.key() + " сброшена (сброс №" + stat.epoch() + ")");
+    }
+
+    // Сброс с обходом онлайн игроков и перезаписью значений в хранилище
+    private void resetAllStored(StatType stat) {
+        // Сбрасываем для онлайн игроков в кэше и для ожидающих записи снимков
+        for (PlayerStats stats : statsCache.values()) {
+            stats.set(stat, 0);
+        }
+        pendingWrites.replaceAll((uuid, pending) -> pending.with(stat, 0));
+        offlineCache.invalidateAll();
+        getLeaderboard(stat).clear();
+        if (journal != null) {
+            journal.appendReset(stat);
+        }
+
+        // Сброс в хранилище выполняется в потоке записи вместе с ближайшим сохранением
+        pendingResets.add(stat);
+        forceSave();
+    }
+
+    // Рейтинг по ключу или псевдониму статистики, либо null для неизвестного ключа
+    public Leaderboard getLeaderboard(String key) {
+        StatType stat = statRegistry.get(key);
+        return stat != null ? getLeaderboard(stat) : null;
+    }
+
+    public Leaderboard getLeaderboard(StatType stat) {
+        Leaderboard[] current = leaderboards;
+        if (stat.id() < current.length) {
+            return current[stat.id()];
+        }
+        return growLeaderboards(stat.id());
+    }
+
+    // Рейтинги новых статистик создаются при первом обращении
+    private synchronized Leaderboard growLeaderboards(int id) {
+        Leaderboard[] current = leaderboards;
+        if (id >= current.length) {
+            Leaderboard[] updated = Arrays.copyOf(current, Math.max(id + 1, statRegistry.size()));
+            for (int i = current.length; i < updated.length; i++) {
+                updated[i] = new Leaderboard(metrics.getLeaderboardLocks());
+            }
+            leaderboards = updated;
+            current = updated;
+        }
+        return current[id];
+    }
+
+    public LeaderboardCache getLeaderboardCache() {
+        return leaderboardCache;
+    }
+
+    public Leaderboard getDeathsLeaderboard() {
+        return getLeaderboard(StatRegistry.DEATHS);
+    }
+
+    public Leaderboard getPlayerKillsLeaderboard() {
+        return getLeaderboard(StatRegistry.PLAYER_KILLS);
+    }
+
+    public Leaderboard getMobKillsLeaderboard() {
+        return getLeaderboard(StatRegistry.MOB_KILLS);
+    }
+
+    public int getCachedPlayersCount() {
+        return statsCache.size();
+    }
+
+    public int getDepartingPlayersCount() {
+        return departingPlayers.size();
+    }
+
+    public String getSaveStatus() {
+        boolean pending = needsSave || statsCache.values().stream().anyMatch(PlayerStats::isDirty);
+        return pending ? "Требуется сохранение" : "Все данные сохранены";
+    }
+
+    // Последние известные имена игроков по UUID
+    public PlayerNames getPlayerNames() {
+        return playerNames;
+    }
+
+    public boolean isStorageReady() {
+        return storageReady;
+    }
+
+    // Длительность загрузки данных при запуске, -1 пока загрузка идет
+    public long getLoadMillis() {
+        return loadMillis;
+    }
+
+    public PlayerDataWriter getDataWriter() {
+        return dataWriter;
+    }
+
+    public StatsStorage getStorage() {
+        return storage;
+    }
+
+    public StatJournal getJournal() {
+        return journal;
+    }
+
+    public PluginScheduler getScheduler() {
+        return scheduler;
+    }
+
+    public PluginMetrics getMetrics() {
+        return metrics;
+    }
+
+    public NetworkStatsStorage getNetworkStorage() {
+        return networkStorage;
+    }
+
+    public OfflineStatsCache getOfflineCache() {
+        return offlineCache;
+    }
+
+    // Класс для хранения статистики игрока: атомарные счетчики без общей блокировки.
+    // Значения лежат в блоках по id статистики; блоки только добавляются, поэтому
+    // регистрация новой статистики не теряет конкурентных приращений. Как IntToLongFunction
+    // запись передается в valueOf без создания лямбды.
+    public static class PlayerStats implements IntToLongFunction {
+        private static final int BLOCK_BITS = 4;
+        private static final int BLOCK_SIZE = 1 << BLOCK_BITS;
+        private static final int BLOCK_MASK = BLOCK_SIZE - 1;
+        // Ячейки блока после значений: биты статистик блока, изменившихся с последнего переноса в рейтинги
+        // и с последнего снимка для сохранения
+        private static final int RANKED_SLOT = BLOCK_SIZE;
+        private static final int UNSAVED_SLOT = BLOCK_SIZE + 1;
+        private static final int BLOCK_SLOTS = BLOCK_SIZE + 2;
+
+        // Строка последнего прочитанного значения статистики для плейсхолдеров
+        private record Rendered(long value, String text) {
+        }
+
+        private volatile AtomicLongArray[] blocks = {new AtomicLongArray(BLOCK_SLOTS)};
+        // Строки по id статистики; гонка при записи безвредна - проигравший поток только заново создаст строку
+        private volatile Rendered[] rendered = new Rendered[0];
+        // Флаг выставляется после изменения счетчика и снимается перед чтением снимка
+        private volatile boolean dirty;
+        // false, пока сохраненные данные игрока не загружены и счетчики хранят только приращения
+        private volatile boolean loaded = true;
+        // Догрузка недогруженной записи уже поставлена
+        private volatile boolean loadClaimed;
+        // Запись стоит в очереди рейтингов
+        private final AtomicBoolean ranking = new AtomicBoolean();
+
+        public PlayerStats() {
+        }
+
+        public PlayerStats(int deaths, int playerKills, int mobKills) {
+            values(StatRegistry.DEATHS.id()).set(StatRegistry.DEATHS.id() & BLOCK_MASK, deaths);
+            values(StatRegistry.PLAYER_KILLS.id()).set(StatRegistry.PLAYER_KILLS.id() & BLOCK_MASK, playerKills);
+            values(StatRegistry.MOB_KILLS.id()).set(StatRegistry.MOB_KILLS.id() & BLOCK_MASK, mobKills);
+        }
+
+        public PlayerStats(StatsSnapshot stored) {
+            for (int id = 0; id < stored.size(); id++) {
+                long value = stored.get(id);
+                if (value != 0) {
+                    values(id).set(id & BLOCK_MASK, value);
+                }
+            }
+        }
+
+        public static PlayerStats unloaded() {
+            PlayerStats stats = new PlayerStats();
+            stats.loaded = false;
+            return stats;
+        }
+
+        public boolean isLoaded() {
+            return loaded;
+        }
+
+        // true ровно для одного вызывающего: он и ставит догрузку записи
+        public boolean claimLoad() {
+            if (loaded || loadClaimed) {
+                return false;
+            }
+            synchronized (this) {
+                if (loadClaimed) {
+                    return false;
+                }
+                loadClaimed = true;
+                return true;
+            }
+        }
+
+        // Добавляет сохраненные значения к накопленным приращениям
+        public void mergeLoaded(StatsSnapshot stored, StatRegistry registry) {
+            merge(stored, registry, true);
+            // Флаг dirty уже выставлен, если до загрузки были приращения
+            loaded = true;
+        }
+
+        // Возвращает приращения в запись, которая хранит только приращения: сумма может быть отрицательной
+        public void mergeDeltas(StatsSnapshot deltas, StatRegistry registry) {
+            merge(deltas, registry, false);
+        }
+
+        private void merge(StatsSnapshot stored, StatRegistry registry, boolean clamp) {
+            if (stored != null) {
+                for (int id = 0; id < stored.size(); id++) {
+                    StatType type = registry.byId(id);
+                    if (type != null && type.isWindowed()) {
+                        // Пара корзин сливается один раз - при обходе текущей корзины или, если ее нет в снимке, прошлой
+                        if (!type.isPrevious() || type.counterpart().id() >= stored.size()) {
+                            mergeWindowed(type.isPrevious() ? type.counterpart() : type, stored);
+                        }
+                        continue;
+                    }
+                    long value = stored.get(id);
+                    if (value != 0 && type != null && type.epoch() != 0) {
+                        mergeEpoch(type, value);
+                    } else if (value != 0 && clamp) {
+                        values(id).accumulateAndGet(id & BLOCK_MASK, value, PlayerStats::clampedSum);
+                    } else if (value != 0) {
+                        values(id).addAndGet(id & BLOCK_MASK, value);
+                    }
+                }
+            }
+        }
+
+        private static long clampedSum(long value, long delta) {
+            return Math.max(0, value + delta);
+        }
+
+        // Упакованные значения не складываются: одинаковый период суммируется, иначе побеждает более новый,
+        // а более старая текущая корзина становится кандидатом в корзину прошлого периода
+        private void mergeWindowed(StatType current, StatsSnapshot stored) {
+            StatType last = current.counterpart();
+            long storedCurrent = stored.get(current.id());
+            long lastCandidate = stored.get(last.id());
+
+            AtomicLongArray currentValues = values(current.id());
+            int index = current.id() & BLOCK_MASK;
+            while (true) {
+                long own = currentValues.get(index);
+                long merged;
+                long displaced;
+                if (WindowClock.tag(own) == WindowClock.tag(storedCurrent)) {
+                    merged = WindowClock.pack(WindowClock.tag(own), WindowClock.value(own) + WindowClock.value(storedCurrent));
+                    displaced = 0;
+                } else if (WindowClock.tag(own) > WindowClock.tag(storedCurrent)) {
+                    merged = own;
+                    displaced = storedCurrent;
+                } else {
+                    merged = storedCurrent;
+                    displaced = own;
+                }
+                if (currentValues.compareAndSet(index, own, merged)) {
+                    lastCandidate = newer(lastCandidate, displaced);
+                    if (merged != storedCurrent) {
+                        markUnsaved(currentValues, current.id());
+                    }
+                    break;
+                }
+            }
+
+            AtomicLongArray lastValues = values(last.id());
+            int lastIndex = last.id() & BLOCK_MASK;
+            while (true) {
+                long own = lastValues.get(lastIndex);
+                long merged = newer(own, lastCandidate);
+                if (lastValues.compareAndSet(lastIndex, own, merged)) {
+                    if (merged != stored.get(last.id())) {
+                        markUnsaved(lastValues, last.id());
+                    }
+                    break;
+                }
+            }
+        }
+
+        // Сохраненное значение прошлого сброса отбрасывается, значения текущего сброса складываются
+        private void mergeEpoch(StatType stat, long stored) {
+            long epoch = stat.epoch();
+            if (WindowClock.tag(stored) != epoch) {
+                return;
+            }
+            AtomicLongArray current = values(stat.id());
+            int index = stat.id() & BLOCK_MASK;
+            while (true) {
+                long own = current.get(index);
+                long merged = WindowClock.tag(own) == epoch
+                        ? WindowClock.pack(epoch, WindowClock.value(own) + WindowClock.value(stored))
+                        : stored;
+                if (current.compareAndSet(index, own, merged)) {
+                    if (merged != stored) {
+                        markUnsaved(current, stat.id());
+                    }
+                    return;
+                }
+            }
+        }
+
+        private static long newer(long first, long second) {
+            return WindowClock.tag(second) > WindowClock.tag(first) ? second : first;
+        }
+
+        private AtomicLongArray values(int id) {
+            AtomicLongArray[] current = blocks;
+            int block = id >>> BLOCK_BITS;
+            return block < current.length ? current[block] : grow(block);
+        }
+
+        private synchronized AtomicLongArray grow(int block) {
+            AtomicLongArray[] current = blocks;
+            if (block >= current.length) {
+                AtomicLongArray[] updated = Arrays.copyOf(current, block + 1);
+                for (int i = current.length; i < updated.length; i++) {
+                    updated[i] = new AtomicLongArray(BLOCK_SLOTS);
+                }
+                blocks = updated;
+                current = updated;
+            }
+            return current[block];
+        }
+
+        // Сырое значение по id статистики (для оконных - упакованное)
+        public long get(int id) {
+            AtomicLongArray[] current = blocks;
+            int block = id >>> BLOCK_BITS;
+            return block < current.length ? current[block].get(id & BLOCK_MASK) : 0;
+        }
+
+        @Override
+        public long applyAsLong(int id) {
+            return get(id);
+        }
+
+        // Строка значения статистики; пока значение не меняется, возвращается одна и та же строка
+        public String render(StatType stat, long value) {
+            Rendered[] current = rendered;
+            int id = stat.id();
+            if (id < current.length) {
+                Rendered cached = current[id];
+                if (cached != null && cached.value() == value) {
+                    return cached.text();
+                }
+            } else {
+                current = growRendered(id);
+            }
+            String text = String.valueOf(value);
+            current[id] = new Rendered(value, text);
+            return text;
+        }
+
+        private synchronized Rendered[] growRendered(int id) {
+            Rendered[] current = rendered;
+            if (id >= current.length) {
+                current = Arrays.copyOf(current, Math.max(id + 1, current.length * 2));
+                rendered = current;
+            }
+            return current;
+        }
+
+        public long get(StatType stat) {
+            AtomicLongArray[] current = blocks;
+            int block = stat.id() >>> BLOCK_BITS;
+            return block < current.length ? current[block].get(stat.id() & BLOCK_MASK) : 0;
+        }
+
+        // Возвращает новое значение; после сброса значение с прежним номером сброса начинается с нуля.
+        // Значение не опускается ниже нуля; только недогруженная запись без сбросов хранит приращения со знаком,
+        // их ограничивает слияние с сохраненными данными
+        public long add(StatType stat, long delta) {
+            int epoch = stat.epoch();
+            boolean clamp = epoch != 0 || loaded;
+            AtomicLongArray current = values(stat.id());
+            int index = stat.id() & BLOCK_MASK;
+            while (true) {
+                long packed = current.get(index);
+                long value;
+                long next;
+                if (epoch == 0) {
+                    value = clamp ? clampedSum(packed, delta) : packed + delta;
+                    next = value;
+                } else {
+                    value = clampedSum(WindowClock.tag(packed) == epoch ? WindowClock.value(packed) : 0, delta);
+                    next = WindowClock.pack(epoch, value);
+                }
+                if (current.compareAndSet(index, packed, next)) {
+                    markUnsaved(current, stat.id());
+                    dirty = true;
+                    return value;
+                }
+            }
+        }
+
+        // Прибавляет к корзине текущего периода; корзина с устаревшим периодом сначала переносится в прошлый период
+        public long addWindowed(StatType stat, long period, long delta) {
+            AtomicLongArray current = values(stat.id());
+            int index = stat.id() & BLOCK_MASK;
+            long tag = period + 1;
+            while (true) {
+                long packed = current.get(index);
+                boolean sameTag = WindowClock.tag(packed) == tag;
+                long value = Math.max(0, (sameTag ? WindowClock.value(packed) : 0) + delta);
+                if (current.compareAndSet(index, packed, WindowClock.pack(tag, value))) {
+                    markUnsaved(current, stat.id());
+                    if (!sameTag && packed != 0) {
+                        set(stat.counterpart(), packed);
+                    }
+                    dirty = true;
+                    return value;
+                }
+            }
+        }
+
+        public void set(StatType stat, long value) {
+            AtomicLongArray block = values(stat.id());
+            block.set(stat.id() & BLOCK_MASK, value);
+            markUnsaved(block, stat.id());
+            dirty = true;
+        }
+
+        // Бит ставится после записи значения, а снимок забирает биты до копирования значений:
+        // изменение либо попадет в снимок, либо оставит бит следующему
+        private static void markUnsaved(AtomicLongArray block, int id) {
+            block.getAndAccumulate(UNSAVED_SLOT, 1L << (id & BLOCK_MASK), PlayerStats::union);
+        }
+
+        public int incrementDeaths() {
+            return (int) add(StatRegistry.DEATHS, 1);
+        }
+
+        public int incrementPlayerKills() {
+            return (int) add(StatRegistry.PLAYER_KILLS, 1);
+        }
+
+        public int incrementMobKills() {
+            return (int) add(StatRegistry.MOB_KILLS, 1);
+        }
+
+        public int getDeaths() {
+            return (int) StatRegistry.DEATHS.decode(get(StatRegistry.DEATHS));
+        }
+
+        public int getPlayerKills() {
+            return (int) StatRegistry.PLAYER_KILLS.decode(get(StatRegistry.PLAYER_KILLS));
+        }
+
+        public int getMobKills() {
+            return (int) StatRegistry.MOB_KILLS.decode(get(StatRegistry.MOB_KILLS));
+        }
+
+        public void setDeaths(int deaths) {
+            set(StatRegistry.DEATHS, StatRegistry.DEATHS.encode(deaths));
+        }
+
+        public void setPlayerKills(int playerKills) {
+            set(StatRegistry.PLAYER_KILLS, StatRegistry.PLAYER_KILLS.encode(playerKills));
+        }
+
+        public void setMobKills(int mobKills) {
+            set(StatRegistry.MOB_KILLS, StatRegistry.MOB_KILLS.encode(mobKills));
+        }
+
+        public boolean isDirty() {
+            return dirty;
+        }
+
+        // Отмечает статистику для переноса в рейтинги; true, если запись нужно поставить в очередь
+        public boolean markChanged(StatType stat) {
+            values(stat.id()).getAndAccumulate(RANKED_SLOT, 1L << (stat.id() & BLOCK_MASK), PlayerStats::union);
+            return !ranking.get() && ranking.compareAndSet(false, true);
+        }
+
+        private static long union(long bits, long bit) {
+            return bits | bit;
+        }
+
+        // Глобальный поток: id статистик, отмеченных с прошлого переноса. Флаг очереди снимается до чтения битов,
+        // поэтому изменение во время обхода снова поставит запись в очередь
+        public void drainChanged(IntConsumer action) {
+            ranking.set(false);
+            AtomicLongArray[] current = blocks;
+            for (int block = 0; block < current.length; block++) {
+                long bits = current[block].getAndSet(RANKED_SLOT, 0);
+                while (bits != 0) {
+                    action.accept((block << BLOCK_BITS) + Long.numberOfTrailingZeros(bits));
+                    bits &= bits - 1;
+                }
+            }
+        }
+
+        // Изменения, сделанные во время снятия снимка, снова поднимут флаг и попадут в следующий flush.
+        // Снимок знает статистики, изменившиеся с прошлого снимка: хранилище пишет только их
+        public StatsSnapshot snapshot(UUID uuid) {
+            dirty = false;
+            AtomicLongArray[] current = blocks;
+            long[] changed = new long[((current.length << BLOCK_BITS) + 63) >>> 6];
+            for (int block = 0; block < current.length; block++) {
+                int first = block << BLOCK_BITS;
+                changed[first >>> 6] |= current[block].getAndSet(UNSAVED_SLOT, 0) << (first & 63);
+            }
+            return new StatsSnapshot(uuid, copyValues(current), changed);
+        }
+
+        // Снимок без снятия флага dirty
+        public StatsSnapshot peek(UUID uuid) {
+            return new StatsSnapshot(uuid, copyValues(blocks));
+        }
+
+        private static long[] copyValues(AtomicLongArray[] current) {
+            long[] values = new long[current.length * BLOCK_SIZE];
+            for (int block = 0; block < current.length; block++) {
+                for (int i = 0; i < BLOCK_SIZE; i++) {
+                    values[(block << BLOCK_BITS) + i] = current[block].get(i);
+                }
+            }
+            return values;
+        }
+
+        // Забирает значения, обнуляя счетчики атомарно: приращения во время обхода остаются в записи
+        public StatsSnapshot drain(UUID uuid) {
+            dirty = false;
+            AtomicLongArray[] current = blocks;
+            long[] values = new long[current.length * BLOCK_SIZE];
+            for (int block = 0; block < current.length; block++) {
+                for (int i = 0; i < BLOCK_SIZE; i++) {
+                    values[(block << BLOCK_BITS) + i] = current[block].getAndSet(i, 0);
+                }
+            }
+            return new StatsSnapshot(uuid, values);
+        }
+
+        public boolean isEmpty() {
+            for (AtomicLongArray block : blocks) {
+                for (int i = 0; i < BLOCK_SIZE; i++) {
+                    if (block.get(i) != 0) {
+                        return false;
+                    }
+                }
+            }
+            return true;
         }
     }
 }
@@ -0,0 +1,111 @@
+package com.flyaway.trackplayer;
+
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+// Текущие номера периодов оконных статистик. Значение оконной статистики хранится в одном long:
+// старшие 24 бита - номер периода + 1, младшие 40 бит - значение. Значение с устаревшим номером
+// считается нулем, поэтому смена периода не требует сброса данных игроков.
+public final class WindowClock {
+
+    static final int VALUE_BITS = 40;
+    static final long VALUE_MASK = (1L << VALUE_BITS) - 1;
+
+    private final ZoneId zone;
+    private final LocalDate seasonStart;
+    private final int seasonLengthDays;
+    // Номер текущего периода по ordinal окна, подменяется целиком раз в секунду
+    private volatile long[] periods;
+
+    private WindowClock(ZoneId zone, LocalDate seasonStart, int seasonLengthDays) {
+        this.zone = zone;
+        this.seasonStart = seasonStart;
+        this.seasonLengthDays = seasonLengthDays;
+        this.periods = compute();
+    }
+
+    public static WindowClock load(ConfigurationSection config, Logger logger) {
+        ZoneId zone = ZoneId.systemDefault();
+        LocalDate seasonStart = LocalDate.of(2026, 1, 1);
+        int seasonLength = 91;
+        if (config != null) {
+            String zoneName = config.getString("timezone", "");
+            if (zoneName != null && !zoneName.isEmpty()) {
+                try {
+                    zone = ZoneId.of(zoneName);
+                } catch (RuntimeException e) {
+                    logger.warning("Неизвестный часовой пояс в настройках windows: " + zoneName);
+                }
+            }
+            try {
+                seasonStart = LocalDate.parse(config.getString("season.start", "2026-01-01"));
+            } catch (DateTimeParseException e) {
+                logger.warning("Неверная дата начала сезона: " + config.getString("season.start"));
+            }
+            seasonLength = Math.max(1, config.getInt("season.length-days", 91));
+        }
+        return new WindowClock(zone, seasonStart, seasonLength);
+    }
+
+    private long[] compute() {
+        LocalDate today = LocalDate.now(zone);
+        StatWindow[] windows = StatWindow.values();
+        long[] result = new long[windows.length];
+        for (StatWindow window : windows) {
+            result[window.ordinal()] = window.period(today, seasonStart, seasonLengthDays);
+        }
+        return result;
+    }
+
+    // Пересчитывает периоды и возвращает окна, у которых начался новый период
+    public List<StatWindow> tick() {
+        long[] previous = periods;
+        long[] current = compute();
+        List<StatWindow> changed = new ArrayList<>(0);
+        for (StatWindow window : StatWindow.values()) {
+            if (current[window.ordinal()] != previous[window.ordinal()]) {
+                changed.add(window);
+            }
+        }
+        if (!changed.isEmpty()) {
+            periods = current;
+        }
+        return changed;
+    }
+
+    public long period(StatWindow window) {
+        return periods[window.ordinal()];
+    }
+
+    // Значение текущей корзины в текущем периоде
+    public long current(StatWindow window, long packed) {
+        return tag(packed) == period(window) + 1 ? value(packed) : 0;
+    }
+
+    // Значение за прошлый период: либо еще не перенесенная текущая корзина, либо корзина предыдущего периода
+    public long previous(StatWindow window, long currentPacked, long lastPacked) {
+        long previousTag = period(window);
+        if (tag(currentPacked) == previousTag) {
+            return value(currentPacked);
+        }
+        return tag(lastPacked) == previousTag ? value(lastPacked) : 0;
+    }
+
+    static long pack(long tag, long value) {
+        return (tag << VALUE_BITS) | (value & VALUE_MASK);
+    }
+
+    static long tag(long packed) {
+        return packed >>> VALUE_BITS;
+    }
+
+    static long value(long packed) {
+        return packed & VALUE_MASK;
+    }
+}
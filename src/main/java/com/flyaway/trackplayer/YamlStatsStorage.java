@@ -0,0 +1,180 @@
+package com.flyaway.trackplayer;
+
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.ObjLongConsumer;
+import java.util.logging.Logger;
+
+// Хранилище в playerdata.yml. Файл целиком держится в памяти в виде снимков
+// и перезаписывается атомарно: временный файл, fsync, переименование.
+// В players лежат сами значения, а номера сбросов (у оконных статистик - номера периодов) -
+// в отдельном разделе epochs с той же структурой, поэтому файл читается без resets.yml.
+public class YamlStatsStorage implements StatsStorage {
+
+    private final File dataFile;
+    private final StatRegistry registry;
+    private final Logger logger;
+    private final Map<UUID, StatsSnapshot> storedStats = new ConcurrentHashMap<>();
+
+    public YamlStatsStorage(File dataFile, StatRegistry registry, Logger logger) {
+        this.dataFile = dataFile;
+        this.registry = registry;
+        this.logger = logger;
+    }
+
+    @Override
+    public String getName() {
+        return "yaml";
+    }
+
+    @Override
+    public void open() {
+        YamlConfiguration playerData = YamlConfiguration.loadConfiguration(dataFile);
+        ConfigurationSection players = playerData.getConfigurationSection("players");
+        if (players == null) {
+            return;
+        }
+        ConfigurationSection epochs = playerData.getConfigurationSection("epochs");
+
+        for (String uuidStr : players.getKeys(false)) {
+            try {
+                UUID uuid = UUID.fromString(uuidStr);
+                ConfigurationSection section = players.getConfigurationSection(uuidStr);
+                if (section == null) {
+                    continue;
+                }
+
+                ConfigurationSection playerEpochs = epochs != null ? epochs.getConfigurationSection(uuidStr) : null;
+                StatsSnapshot snapshot = StatsSnapshot.empty(uuid);
+                for (String key : section.getKeys(false)) {
+                    StatType type = registerStoredKey(key);
+                    if (type != null) {
+                        // Файлы прежних версий хранили номер сброса упакованным в само значение
+                        long value = section.getLong(key, 0);
+                        long epoch = playerEpochs != null ? playerEpochs.getLong(key, 0) : 0;
+                        snapshot = snapshot.with(type, epoch != 0 ? WindowClock.pack(epoch, value) : value);
+                    }
+                }
+                storedStats.put(uuid, snapshot);
+            } catch (IllegalArgumentException e) {
+                logger.warning("Неверный UUID в файле данных: " + uuidStr);
+            }
+        }
+    }
+
+    private StatType registerStoredKey(String key) {
+        StatType type = registry.get(key);
+        if (type != null) {
+            return type;
+        }
+        try {
+            return registry.register(key, null);
+        } catch (IllegalArgumentException e) {
+            logger.warning("Неизвестная статистика в файле данных: " + key);
+            return null;
+        }
+    }
+
+    @Override
+    public StatsSnapshot load(UUID uuid) {
+        return storedStats.get(uuid);
+    }
+
+    @Override
+    public void forEachValue(StatType type, ObjLongConsumer<UUID> consumer) {
+        for (StatsSnapshot stored : storedStats.values()) {
+            long value = stored.get(type);
+            if (value != 0) {
+                consumer.accept(stored.uuid(), value);
+            }
+        }
+    }
+
+    public Collection<StatsSnapshot> getAll() {
+        return storedStats.values();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return storedStats.isEmpty();
+    }
+
+    @Override
+    public int count() {
+        return storedStats.size();
+    }
+
+    @Override
+    public long save(Collection<StatsSnapshot> snapshots) throws IOException {
+        for (StatsSnapshot snapshot : snapshots) {
+            // Снимки онлайн игроков содержат место под все статистики, в памяти держим только значимую часть
+            storedStats.put(snapshot.uuid(), snapshot.trimmed());
+        }
+        return writeFile();
+    }
+
+    @Override
+    public void resetAll(StatType type) throws IOException {
+        storedStats.replaceAll((uuid, stored) -> stored.get(type) != 0 ? stored.with(type, 0) : stored);
+        writeFile();
+    }
+
+    @Override
+    public void close() {
+    }
+
+    private long writeFile() throws IOException {
+        YamlConfiguration playerData = new YamlConfiguration();
+        playerData.createSection("players");
+        for (StatsSnapshot stats : storedStats.values()) {
+            String path = "players." + stats.uuid().toString() + ".";
+            String epochPath = "epochs." + stats.uuid().toString() + ".";
+            for (int id = 0; id < stats.size(); id++) {
+                StatType type = registry.byId(id);
+                long raw = stats.get(id);
+                // Отсутствующий ключ равен нулю; встроенные статистики пишутся всегда, как и раньше
+                if (type != null && (raw != 0 || id < StatRegistry.BUILT_IN_COUNT)) {
+                    playerData.set(path + type.key(), WindowClock.value(raw));
+                    if (WindowClock.tag(raw) != 0) {
+                        playerData.set(epochPath + type.key(), WindowClock.tag(raw));
+                    }
+                }
+            }
+        }
+
+        byte[] bytes = playerData.saveToString().getBytes(StandardCharsets.UTF_8);
+        Path target = dataFile.toPath();
+        Path tempFile = target.resolveSibling(dataFile.getName() + ".tmp");
+
+        try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+
+        try {
+            Files.move(tempFile, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tempFile, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        return bytes.length;
+    }
+}
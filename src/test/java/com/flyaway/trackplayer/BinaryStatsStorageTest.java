@@ -0,0 +1,122 @@
+package com.flyaway.trackplayer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BinaryStatsStorageTest {
+
+    private static final Logger LOGGER = Logger.getLogger("TrackPlayerTest");
+    private static final UUID A = new UUID(0x1111, 1);
+    private static final UUID B = new UUID(0x2222, 2);
+
+    @TempDir
+    File directory;
+
+    @Test
+    void writeReopenRead() throws IOException {
+        StatRegistry registry = new StatRegistry();
+        StatType custom = registry.register("blocks_broken", null);
+        BinaryStatsStorage storage = open(registry);
+        assertTrue(storage.isEmpty());
+        storage.save(List.of(
+                StatsSnapshot.empty(A).with(StatRegistry.DEATHS, 3).with(custom, 40),
+                StatsSnapshot.empty(B).with(StatRegistry.MOB_KILLS, 7)));
+        storage.close();
+
+        // Новый реестр, как после перезапуска: ключи столбцов регистрируются из заголовка
+        StatRegistry reloaded = new StatRegistry();
+        BinaryStatsStorage reopened = open(reloaded);
+        StatType reloadedCustom = reloaded.get("blocks_broken");
+        assertEquals(2, reopened.count());
+        assertEquals(3, reopened.load(A).get(StatRegistry.DEATHS));
+        assertEquals(40, reopened.load(A).get(reloadedCustom));
+        assertEquals(7, reopened.load(B).get(StatRegistry.MOB_KILLS));
+        assertNull(reopened.load(new UUID(9, 9)));
+
+        Map<UUID, Long> mobKills = new HashMap<>();
+        reopened.forEachValue(StatRegistry.MOB_KILLS, mobKills::put);
+        assertEquals(Map.of(B, 7L), mobKills);
+        reopened.close();
+    }
+
+    @Test
+    void saveOverwritesRecordInPlace() throws IOException {
+        StatRegistry registry = new StatRegistry();
+        BinaryStatsStorage storage = open(registry);
+        storage.save(List.of(StatsSnapshot.empty(A).with(StatRegistry.DEATHS, 1)));
+        storage.save(List.of(StatsSnapshot.empty(A).with(StatRegistry.DEATHS, 2)));
+        assertEquals(1, storage.count());
+        assertEquals(2, storage.load(A).get(StatRegistry.DEATHS));
+        storage.close();
+    }
+
+    @Test
+    void newStatExpandsColumnsAndKeepsValues() throws IOException {
+        StatRegistry registry = new StatRegistry();
+        BinaryStatsStorage storage = open(registry);
+        storage.save(List.of(StatsSnapshot.empty(A).with(StatRegistry.PLAYER_KILLS, 5)));
+
+        StatType added = registry.register("fish_caught", null);
+        storage.save(List.of(StatsSnapshot.empty(B).with(added, 11)));
+        storage.close();
+
+        StatRegistry reloaded = new StatRegistry();
+        BinaryStatsStorage reopened = open(reloaded);
+        assertEquals(5, reopened.load(A).get(StatRegistry.PLAYER_KILLS));
+        assertEquals(11, reopened.load(B).get(reloaded.get("fish_caught")));
+        reopened.close();
+    }
+
+    // Файл версии 1: заголовок magic, version, размер записи, количество; запись uuid + три int
+    @Test
+    void migratesVersionOneFile() throws IOException {
+        ByteBuffer v1 = ByteBuffer.allocate(16 + 2 * 28);
+        v1.putInt(0x54505354).putInt(1).putInt(28).putInt(2);
+        v1.putLong(A.getMostSignificantBits()).putLong(A.getLeastSignificantBits()).putInt(4).putInt(5).putInt(6);
+        v1.putLong(B.getMostSignificantBits()).putLong(B.getLeastSignificantBits()).putInt(0).putInt(0).putInt(9);
+        File file = new File(directory, "playerdata.bin");
+        Files.write(file.toPath(), v1.array());
+
+        BinaryStatsStorage storage = open(new StatRegistry());
+        assertEquals(2, storage.count());
+        StatsSnapshot a = storage.load(A);
+        assertEquals(4, a.get(StatRegistry.DEATHS));
+        assertEquals(5, a.get(StatRegistry.PLAYER_KILLS));
+        assertEquals(6, a.get(StatRegistry.MOB_KILLS));
+        assertEquals(9, storage.load(B).get(StatRegistry.MOB_KILLS));
+        storage.close();
+
+        // Преобразованный файл открывается как версия 2
+        BinaryStatsStorage reopened = open(new StatRegistry());
+        assertEquals(6, reopened.load(A).get(StatRegistry.MOB_KILLS));
+        reopened.close();
+    }
+
+    @Test
+    void rejectsUnknownFormat() throws IOException {
+        Files.write(new File(directory, "playerdata.bin").toPath(), new byte[64]);
+        BinaryStatsStorage storage = new BinaryStatsStorage(new File(directory, "playerdata.bin"), new StatRegistry(), LOGGER);
+        assertThrows(IOException.class, storage::open);
+    }
+
+    private BinaryStatsStorage open(StatRegistry registry) throws IOException {
+        BinaryStatsStorage storage = new BinaryStatsStorage(new File(directory, "playerdata.bin"), registry, LOGGER);
+        storage.open();
+        return storage;
+    }
+}
@@ -0,0 +1,137 @@
+package com.flyaway.trackplayer;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// Путь обновления без общей блокировки, как на Folia: потоки регионов меняют счетчики и ставят
+// изменения в очередь рейтингов, а глобальный поток параллельно переносит их в рейтинги
+class ConcurrentUpdateTest {
+
+    private static final int THREADS = 8;
+    private static final int PLAYERS = 32;
+    private static final int EVENTS_PER_THREAD = 200_000;
+
+    @Test
+    void countersAndLeaderboardsMatchEventTotals() throws Exception {
+        StatType stat = StatRegistry.MOB_KILLS;
+        UUID[] uuids = new UUID[PLAYERS];
+        TrackPlayer.PlayerStats[] records = new TrackPlayer.PlayerStats[PLAYERS];
+        for (int i = 0; i < PLAYERS; i++) {
+            uuids[i] = new UUID(0, i);
+            records[i] = new TrackPlayer.PlayerStats();
+        }
+        LeaderboardQueue queue = new LeaderboardQueue();
+        Leaderboard leaderboard = new Leaderboard();
+
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS + 1);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicBoolean running = new AtomicBoolean(true);
+        // Глобальный поток: переносы в рейтинг идут все время, пока потоки регионов пишут
+        Future<?> global = pool.submit(() -> {
+            await(start);
+            while (running.get()) {
+                queue.drain(update -> update.stats().drainChanged(id -> leaderboard.update(update.uuid(), update.stats().get(id))));
+            }
+        });
+
+        List<Future<long[]>> regions = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            int seed = t;
+            regions.add(pool.submit(() -> {
+                long[] expected = new long[PLAYERS];
+                await(start);
+                for (int i = 0; i < EVENTS_PER_THREAD; i++) {
+                    // Все потоки пишут в одни и те же записи
+                    int player = (i * 31 + seed) % PLAYERS;
+                    records[player].add(stat, 1);
+                    if (records[player].markChanged(stat)) {
+                        queue.add(uuids[player], records[player]);
+                    }
+                    expected[player]++;
+                }
+                return expected;
+            }));
+        }
+
+        start.countDown();
+        long[] expected = new long[PLAYERS];
+        for (Future<long[]> region : regions) {
+            long[] counts = region.get(60, TimeUnit.SECONDS);
+            for (int i = 0; i < PLAYERS; i++) {
+                expected[i] += counts[i];
+            }
+        }
+        running.set(false);
+        global.get(60, TimeUnit.SECONDS);
+        pool.shutdown();
+        // Последний тик после остановки потоков регионов
+        queue.drain(update -> update.stats().drainChanged(id -> leaderboard.update(update.uuid(), update.stats().get(id))));
+
+        long total = 0;
+        for (int i = 0; i < PLAYERS; i++) {
+            assertEquals(expected[i], records[i].get(stat), "счетчик игрока " + i);
+            assertEquals(expected[i], leaderboard.getValue(uuids[i]), "рейтинг игрока " + i);
+            total += expected[i];
+        }
+        assertEquals((long) THREADS * EVENTS_PER_THREAD, total);
+        assertEquals(PLAYERS, leaderboard.size());
+    }
+
+    @Test
+    void growingRecordKeepsEveryIncrement() throws Exception {
+        StatRegistry registry = new StatRegistry();
+        TrackPlayer.PlayerStats record = new TrackPlayer.PlayerStats();
+        int statCount = 64;
+        StatType[] stats = new StatType[statCount];
+        for (int i = 0; i < statCount; i++) {
+            stats[i] = registry.register("concurrent_" + i, null);
+        }
+
+        // Статистики с большими id растят массив блоков записи одновременно с приращениями
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> workers = new ArrayList<>();
+        int rounds = 20_000;
+        for (int t = 0; t < THREADS; t++) {
+            int offset = t;
+            workers.add(pool.submit(() -> {
+                await(start);
+                for (int i = 0; i < rounds; i++) {
+                    record.add(stats[(i + offset) % statCount], 1);
+                    record.add(StatRegistry.DEATHS, 1);
+                }
+            }));
+        }
+        start.countDown();
+        for (Future<?> worker : workers) {
+            worker.get(60, TimeUnit.SECONDS);
+        }
+        pool.shutdown();
+
+        long total = 0;
+        for (StatType stat : stats) {
+            total += record.get(stat);
+        }
+        assertEquals((long) THREADS * rounds, total);
+        assertEquals((long) THREADS * rounds, record.get(StatRegistry.DEATHS));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package com.flyaway.trackplayer;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LeaderboardTest {
+
+    private static final UUID A = new UUID(0, 1);
+    private static final UUID B = new UUID(0, 2);
+    private static final UUID C = new UUID(0, 3);
+
+    @Test
+    void ranksByValueThenUuid() {
+        Leaderboard leaderboard = new Leaderboard();
+        leaderboard.update(C, 10);
+        leaderboard.update(A, 5);
+        leaderboard.update(B, 10);
+
+        assertEquals(List.of(new Leaderboard.Entry(B, 10), new Leaderboard.Entry(C, 10), new Leaderboard.Entry(A, 5)),
+                leaderboard.top(0, 10));
+        assertEquals(1, leaderboard.rank(B));
+        assertEquals(2, leaderboard.rank(C));
+        assertEquals(3, leaderboard.rank(A));
+    }
+
+    @Test
+    void updateMovesPlayerAndZeroRemovesIt() {
+        Leaderboard leaderboard = new Leaderboard();
+        leaderboard.update(A, 1);
+        leaderboard.update(B, 2);
+        leaderboard.update(A, 3);
+        assertEquals(1, leaderboard.rank(A));
+        assertEquals(3, leaderboard.getValue(A));
+
+        leaderboard.update(A, 0);
+        assertEquals(0, leaderboard.rank(A));
+        assertEquals(0, leaderboard.getValue(A));
+        assertEquals(1, leaderboard.size());
+        assertEquals(1, leaderboard.rank(B));
+    }
+
+    @Test
+    void removeAndClear() {
+        Leaderboard leaderboard = new Leaderboard();
+        leaderboard.update(A, 1);
+        leaderboard.update(B, 2);
+        leaderboard.remove(B);
+        leaderboard.remove(C);
+        assertEquals(List.of(new Leaderboard.Entry(A, 1)), leaderboard.top(0, 10));
+
+        leaderboard.clear();
+        assertEquals(0, leaderboard.size());
+        assertTrue(leaderboard.top(0, 10).isEmpty());
+    }
+
+    @Test
+    void topHandlesOffsetsPastTheEnd() {
+        Leaderboard leaderboard = new Leaderboard();
+        leaderboard.update(A, 1);
+        leaderboard.update(B, 2);
+        assertEquals(List.of(new Leaderboard.Entry(A, 1)), leaderboard.top(1, 10));
+        assertTrue(leaderboard.top(2, 10).isEmpty());
+        assertTrue(leaderboard.top(5, 10).isEmpty());
+        assertTrue(leaderboard.top(0, 0).isEmpty());
+    }
+
+    @Test
+    void moveToTransfersContent() {
+        Leaderboard current = new Leaderboard();
+        Leaderboard previous = new Leaderboard();
+        previous.update(C, 7);
+        current.update(A, 4);
+
+        current.moveTo(previous);
+        assertEquals(0, current.size());
+        assertEquals(1, previous.size());
+        assertEquals(4, previous.getValue(A));
+        assertEquals(0, previous.getValue(C));
+    }
+
+    @Test
+    void versionChangesOnlyWithContent() {
+        Leaderboard leaderboard = new Leaderboard();
+        leaderboard.update(A, 3);
+        long version = leaderboard.version();
+
+        leaderboard.update(A, 3);
+        leaderboard.remove(B);
+        assertEquals(version, leaderboard.version());
+
+        leaderboard.update(A, 4);
+        assertTrue(leaderboard.version() != version);
+    }
+
+    @Test
+    void exactRankOnlyAboveSeededFloor() {
+        Leaderboard leaderboard = new Leaderboard();
+        leaderboard.update(C, 2);
+        // Лучшие значения из хранилища еще не загружены
+        assertEquals(-1, leaderboard.exactRank(C));
+
+        leaderboard.seed(List.of(new Leaderboard.Entry(A, 9), new Leaderboard.Entry(B, 5)), 5, uuid -> false);
+        assertEquals(1, leaderboard.exactRank(A));
+        assertEquals(-1, leaderboard.exactRank(B));
+        assertEquals(-1, leaderboard.exactRank(C));
+
+        leaderboard.clear();
+        assertEquals(0, leaderboard.exactRank(A));
+    }
+
+    @Test
+    void trimKeepsTopAndRetainedPlayers() {
+        Leaderboard leaderboard = new Leaderboard();
+        leaderboard.seed(List.of(), 0, uuid -> false);
+        leaderboard.update(A, 9);
+        leaderboard.update(B, 5);
+        leaderboard.update(C, 3);
+
+        leaderboard.trim(1, uuid -> uuid.equals(C));
+        assertEquals(2, leaderboard.size());
+        assertEquals(0, leaderboard.getValue(B));
+        assertEquals(1, leaderboard.exactRank(A));
+        // Убранный игрок мог быть выше: место C теперь считает хранилище
+        assertEquals(-1, leaderboard.exactRank(C));
+    }
+
+    @Test
+    void seedSkipsFresherValues() {
+        Leaderboard leaderboard = new Leaderboard();
+        leaderboard.update(A, 12);
+        leaderboard.seed(List.of(new Leaderboard.Entry(A, 4), new Leaderboard.Entry(B, 3)), 0, A::equals);
+        assertEquals(12, leaderboard.getValue(A));
+        assertEquals(2, leaderboard.exactRank(B));
+    }
+
+    // Случайные обновления сверяются с отсортированным списком
+    @Test
+    void matchesSortedModel() {
+        Random random = new Random(42);
+        Leaderboard leaderboard = new Leaderboard();
+        Map<UUID, Long> model = new HashMap<>();
+        Comparator<Map.Entry<UUID, Long>> order = Map.Entry.<UUID, Long>comparingByValue().reversed()
+                .thenComparing(Map.Entry.comparingByKey());
+
+        for (int step = 0; step < 20_000; step++) {
+            UUID uuid = new UUID(0, random.nextInt(500));
+            if (random.nextInt(10) == 0) {
+                leaderboard.remove(uuid);
+                model.remove(uuid);
+            } else {
+                long value = random.nextInt(50);
+                leaderboard.update(uuid, value);
+                if (value > 0) {
+                    model.put(uuid, value);
+                } else {
+                    model.remove(uuid);
+                }
+            }
+
+            if (step % 1000 == 999) {
+                List<Map.Entry<UUID, Long>> sorted = new ArrayList<>(model.entrySet());
+                sorted.sort(order);
+                assertEquals(sorted.size(), leaderboard.size());
+                for (int i = 0; i < sorted.size(); i++) {
+                    assertEquals(i + 1, leaderboard.rank(sorted.get(i).getKey()));
+                }
+                int offset = random.nextInt(sorted.size() + 1);
+                List<Leaderboard.Entry> page = leaderboard.top(offset, 25);
+                assertEquals(Math.min(25, sorted.size() - offset), page.size());
+                for (int i = 0; i < page.size(); i++) {
+                    Map.Entry<UUID, Long> expected = sorted.get(offset + i);
+                    assertEquals(new Leaderboard.Entry(expected.getKey(), expected.getValue()), page.get(i));
+                }
+            }
+        }
+    }
+}
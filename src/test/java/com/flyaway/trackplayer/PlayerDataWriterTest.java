@@ -0,0 +1,42 @@
+package com.flyaway.trackplayer;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PlayerDataWriterTest {
+
+    // Заполненная очередь не задерживает вызывающий поток: задача отклоняется и учитывается
+    @Test
+    void offerDoesNotWaitForFullQueue() throws InterruptedException {
+        PlayerDataWriter writer = new PlayerDataWriter(Logger.getLogger("TrackPlayerTest"), 1);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger completed = new AtomicInteger();
+
+        assertTrue(writer.offer(() -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        started.await();
+        assertTrue(writer.offer(completed::incrementAndGet));
+        assertFalse(writer.offer(completed::incrementAndGet));
+        assertEquals(1, writer.getRejectedOffers());
+
+        release.countDown();
+        assertTrue(writer.awaitIdle(10));
+        assertEquals(1, completed.get());
+        writer.shutdown(10);
+        assertFalse(writer.offer(completed::incrementAndGet));
+    }
+}
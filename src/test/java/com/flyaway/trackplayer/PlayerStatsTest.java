@@ -0,0 +1,56 @@
+package com.flyaway.trackplayer;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Снимки для сохранения перечисляют только статистики, изменившиеся с прошлого снимка
+class PlayerStatsTest {
+
+    private static final UUID PLAYER = new UUID(3, 3);
+
+    @Test
+    void snapshotMarksOnlyChangedStats() {
+        StatRegistry registry = new StatRegistry();
+        StatType first = registry.register("blocks_broken", null);
+        StatType second = registry.register("blocks_placed", null);
+        TrackPlayer.PlayerStats stats = new TrackPlayer.PlayerStats();
+        stats.add(first, 2);
+        stats.add(second, 1);
+        StatsSnapshot initial = stats.snapshot(PLAYER);
+        assertTrue(initial.isChanged(first.id()));
+        assertTrue(initial.isChanged(second.id()));
+
+        stats.add(second, -1);
+        StatsSnapshot next = stats.snapshot(PLAYER);
+        assertFalse(next.isChanged(first.id()));
+        assertTrue(next.isChanged(second.id()));
+        assertEquals(2, next.get(first));
+
+        // Нечего сохранять, пока значения не менялись
+        StatsSnapshot idle = stats.snapshot(PLAYER);
+        assertFalse(idle.isChanged(first.id()));
+        assertFalse(idle.isChanged(second.id()));
+    }
+
+    @Test
+    void supersededSnapshotKeepsEarlierChanges() {
+        StatRegistry registry = new StatRegistry();
+        StatType first = registry.register("blocks_broken", null);
+        StatType second = registry.register("blocks_placed", null);
+        TrackPlayer.PlayerStats stats = new TrackPlayer.PlayerStats();
+        stats.add(first, 1);
+        StatsSnapshot unsaved = stats.snapshot(PLAYER);
+        stats.add(second, 1);
+
+        StatsSnapshot merged = stats.snapshot(PLAYER).supersede(unsaved);
+        assertTrue(merged.isChanged(first.id()));
+        assertTrue(merged.isChanged(second.id()));
+        // Снимки без списка изменений пишутся целиком
+        assertTrue(new StatsSnapshot(PLAYER, new long[0]).isChanged(second.id()));
+    }
+}
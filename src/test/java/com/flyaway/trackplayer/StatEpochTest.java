@@ -0,0 +1,137 @@
+package com.flyaway.trackplayer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Сброс за O(1), сохранение и повторное открытие хранилища, в том числе без resets.yml
+class StatEpochTest {
+
+    private static final Logger LOGGER = Logger.getLogger("TrackPlayerTest");
+    private static final UUID PLAYER = new UUID(1, 1);
+    private static final UUID OTHER = new UUID(2, 2);
+
+    @TempDir
+    File directory;
+
+    @Test
+    void resetHidesOldValuesWithoutRewritingStorage() throws IOException {
+        StatRegistry registry = new StatRegistry();
+        StatType stat = registry.register("blocks_broken", null);
+        BinaryStatsStorage storage = open(registry);
+
+        TrackPlayer.PlayerStats before = new TrackPlayer.PlayerStats();
+        before.add(stat, 7);
+        storage.save(List.of(before.snapshot(OTHER)));
+
+        stat.setEpoch(1);
+        TrackPlayer.PlayerStats after = new TrackPlayer.PlayerStats();
+        after.add(stat, 5);
+        storage.save(List.of(after.snapshot(PLAYER)));
+
+        assertEquals(0, stat.decode(storage.load(OTHER).get(stat)));
+        assertEquals(5, stat.decode(storage.load(PLAYER).get(stat)));
+        storage.close();
+    }
+
+    @Test
+    void reloadKeepsValuesWithKnownEpoch() throws IOException {
+        StatRegistry registry = new StatRegistry();
+        StatType stat = registry.register("blocks_broken", null);
+        stat.setEpoch(3);
+        BinaryStatsStorage storage = open(registry);
+        TrackPlayer.PlayerStats stats = new TrackPlayer.PlayerStats();
+        stats.add(stat, 12);
+        storage.save(List.of(stats.snapshot(PLAYER)));
+        storage.close();
+
+        StatRegistry reloaded = new StatRegistry();
+        reloaded.register("blocks_broken", null).setEpoch(3);
+        BinaryStatsStorage reopened = open(reloaded);
+        StatType restored = reloaded.get("blocks_broken");
+        assertTrue(reloaded.restoreEpochs(reopened).isEmpty());
+        assertEquals(12, restored.decode(reopened.load(PLAYER).get(restored)));
+        reopened.close();
+    }
+
+    @Test
+    void lostResetsFileIsRestoredFromStorage() throws IOException {
+        StatRegistry registry = new StatRegistry();
+        StatType stat = registry.register("blocks_broken", null);
+        stat.setEpoch(2);
+        BinaryStatsStorage storage = open(registry);
+        TrackPlayer.PlayerStats stats = new TrackPlayer.PlayerStats();
+        stats.add(stat, 9);
+        storage.save(List.of(stats.snapshot(PLAYER)));
+        storage.close();
+
+        // Номер сброса неизвестен: без проверки значение читалось бы как число порядка 10^12
+        StatRegistry reloaded = new StatRegistry();
+        BinaryStatsStorage reopened = open(reloaded);
+        StatType restored = reloaded.get("blocks_broken");
+        long raw = reopened.load(PLAYER).get(restored);
+        assertEquals(0, restored.decode(raw));
+
+        assertEquals(List.of(restored), reloaded.restoreEpochs(reopened));
+        assertEquals(2, restored.epoch());
+        assertEquals(9, restored.decode(raw));
+
+        // Следующее изменение продолжает значение текущего сброса
+        TrackPlayer.PlayerStats loaded = new TrackPlayer.PlayerStats(reopened.load(PLAYER));
+        loaded.add(restored, 1);
+        assertEquals(10, restored.decode(loaded.get(restored)));
+        reopened.close();
+    }
+
+    @Test
+    void removeStopsAtZeroWithAndWithoutReset() {
+        StatRegistry registry = new StatRegistry();
+        StatType plain = registry.register("blocks_broken", null);
+        StatType reset = registry.register("blocks_placed", null);
+        reset.setEpoch(1);
+        TrackPlayer.PlayerStats stats = new TrackPlayer.PlayerStats();
+        stats.add(plain, 3);
+        stats.add(reset, 3);
+
+        assertEquals(0, stats.add(plain, -5));
+        assertEquals(0, stats.add(reset, -5));
+        assertEquals(0, plain.decode(stats.get(plain)));
+        assertEquals(2, stats.add(plain, 2));
+    }
+
+    @Test
+    void unloadedRecordKeepsNegativeDeltaUntilMerge() {
+        StatRegistry registry = new StatRegistry();
+        StatType stat = registry.register("blocks_broken", null);
+        TrackPlayer.PlayerStats stored = new TrackPlayer.PlayerStats();
+        stored.add(stat, 4);
+
+        TrackPlayer.PlayerStats pending = TrackPlayer.PlayerStats.unloaded();
+        pending.add(stat, -3);
+        pending.mergeLoaded(stored.snapshot(PLAYER), registry);
+        assertEquals(1, value(pending, stat));
+
+        TrackPlayer.PlayerStats overdrawn = TrackPlayer.PlayerStats.unloaded();
+        overdrawn.add(stat, -9);
+        overdrawn.mergeLoaded(stored.snapshot(PLAYER), registry);
+        assertEquals(0, value(overdrawn, stat));
+    }
+
+    private static long value(TrackPlayer.PlayerStats record, StatType stat) {
+        return stat.decode(record.get(stat));
+    }
+
+    private BinaryStatsStorage open(StatRegistry registry) throws IOException {
+        BinaryStatsStorage storage = new BinaryStatsStorage(new File(directory, "playerdata.bin"), registry, LOGGER);
+        storage.open();
+        return storage;
+    }
+}
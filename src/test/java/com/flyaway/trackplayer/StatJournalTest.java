@@ -0,0 +1,150 @@
+package com.flyaway.trackplayer;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class StatJournalTest {
+
+    private static final Logger LOGGER = Logger.getLogger("TrackPlayerTest");
+    private static final UUID FIRST = new UUID(1, 1);
+    private static final UUID SECOND = new UUID(2, 2);
+
+    @TempDir
+    File directory;
+
+    private File journalDirectory;
+    private BinaryStatsStorage storage;
+
+    @BeforeEach
+    void openStorage() throws IOException {
+        journalDirectory = new File(directory, "journal");
+        storage = new BinaryStatsStorage(new File(directory, "playerdata.bin"), new StatRegistry(), LOGGER);
+        storage.open();
+    }
+
+    @AfterEach
+    void closeStorage() {
+        storage.close();
+    }
+
+    // Сегмент, покрытый сохранением, удаляется; следующие сегменты со сбросом применяются при запуске
+    @Test
+    void replaysSegmentsLeftAfterPartialDiscard() throws IOException {
+        StatRegistry registry = new StatRegistry();
+        StatJournal journal = open(registry);
+        journal.append(FIRST, StatRegistry.DEATHS, 1);
+        journal.append(FIRST, StatRegistry.DEATHS, 2);
+        journal.commit();
+        long covered = journal.seal();
+
+        StatType custom = registry.register("custom", null);
+        journal.append(SECOND, StatRegistry.MOB_KILLS, 7);
+        journal.append(SECOND, custom, 3);
+        journal.commit();
+        journal.appendReset(StatRegistry.DEATHS);
+        journal.append(FIRST, StatRegistry.DEATHS, 5);
+        journal.discardUpTo(covered);
+        journal.close();
+        assertEquals(2, journal.getSegmentCount());
+
+        // Сохраненный снимок покрытого сегмента; после него были сброс и новое значение
+        storage.save(List.of(StatsSnapshot.empty(FIRST).with(StatRegistry.DEATHS, 100).with(StatRegistry.MOB_KILLS, 4)));
+
+        assertEquals(4, restart(new StatRegistry()));
+        assertEquals(5, storage.load(FIRST).get(StatRegistry.DEATHS));
+        assertEquals(4, storage.load(FIRST).get(StatRegistry.MOB_KILLS));
+        assertEquals(7, storage.load(SECOND).get(StatRegistry.MOB_KILLS));
+        // Примененные сегменты удалены
+        assertEquals(0, restart(new StatRegistry()));
+    }
+
+    // Закрытый, но еще не записанный сегмент, покрытый сохранением, на диск не попадает
+    @Test
+    void discardDropsSealedSegmentBeforeCommit() throws IOException {
+        StatJournal journal = open(new StatRegistry());
+        journal.append(FIRST, StatRegistry.DEATHS, 9);
+        long covered = journal.seal();
+        journal.append(SECOND, StatRegistry.PLAYER_KILLS, 2);
+        journal.discardUpTo(covered);
+        journal.close();
+
+        assertEquals(1, restart(new StatRegistry()));
+        assertNull(storage.load(FIRST));
+        assertEquals(2, storage.load(SECOND).get(StatRegistry.PLAYER_KILLS));
+    }
+
+    // Оборванная при сбое последняя запись отбрасывается, предыдущие применяются
+    @Test
+    void truncatedTailIsDropped() throws IOException {
+        StatJournal journal = open(new StatRegistry());
+        journal.append(FIRST, StatRegistry.DEATHS, 3);
+        journal.append(FIRST, StatRegistry.MOB_KILLS, 6);
+        journal.close();
+
+        File[] files = journalDirectory.listFiles();
+        assertEquals(1, files.length);
+        try (RandomAccessFile file = new RandomAccessFile(files[0], "rw")) {
+            file.setLength(file.length() - 3);
+        }
+
+        assertEquals(1, restart(new StatRegistry()));
+        assertEquals(3, storage.load(FIRST).get(StatRegistry.DEATHS));
+        assertEquals(0, storage.load(FIRST).get(StatRegistry.MOB_KILLS));
+    }
+
+    // Изменение счетчика и запись его значения под блокировкой полосы: последняя запись игрока в журнале -
+    // итоговое значение, сколько бы потоков ни меняли одну запись
+    @Test
+    void concurrentIncrementsReplayFinalValue() throws Exception {
+        StatJournal journal = open(new StatRegistry());
+        TrackPlayer.PlayerStats stats = new TrackPlayer.PlayerStats();
+        int threads = 4;
+        int increments = 20_000;
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread(() -> {
+                for (int i = 0; i < increments; i++) {
+                    journal.lock(FIRST);
+                    try {
+                        stats.add(StatRegistry.DEATHS, 1);
+                        journal.append(FIRST, StatRegistry.DEATHS, stats);
+                    } finally {
+                        journal.unlock(FIRST);
+                    }
+                }
+            });
+            workers[t].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        journal.close();
+
+        restart(new StatRegistry());
+        assertEquals(threads * increments, storage.load(FIRST).get(StatRegistry.DEATHS));
+    }
+
+    // Журнал после перезапуска: применяет оставшиеся сегменты и возвращает число восстановленных записей
+    private int restart(StatRegistry registry) throws IOException {
+        return new StatJournal(journalDirectory, registry, LOGGER, new LockMeter()).replay(storage);
+    }
+
+    // Новый журнал с пустой папкой
+    private StatJournal open(StatRegistry registry) throws IOException {
+        StatJournal journal = new StatJournal(journalDirectory, registry, LOGGER, new LockMeter());
+        assertEquals(0, journal.replay(storage));
+        return journal;
+    }
+}
@@ -0,0 +1,106 @@
+package com.flyaway.trackplayer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StatRegistryTest {
+
+    private static final Logger LOGGER = Logger.getLogger("TrackPlayerTest");
+    private static final UUID PLAYER = new UUID(0x3333, 3);
+
+    @TempDir
+    File directory;
+
+    @Test
+    void builtInIdsAndAliases() {
+        StatRegistry registry = new StatRegistry();
+        assertEquals(StatRegistry.BUILT_IN_COUNT, registry.size());
+        assertSame(StatRegistry.DEATHS, registry.byId(0));
+        assertSame(StatRegistry.PLAYER_KILLS, registry.get("kills"));
+        assertSame(StatRegistry.MOB_KILLS, registry.get("mobkills"));
+    }
+
+    @Test
+    void registerIsIdempotent() {
+        StatRegistry registry = new StatRegistry();
+        StatType first = registry.register("Fish_Caught", null);
+        StatType second = registry.register("fish_caught", "Поймано рыбы");
+        assertSame(first, second);
+        assertEquals("fish_caught", first.key());
+        assertEquals("Поймано рыбы", first.displayName());
+        assertEquals(StatRegistry.BUILT_IN_COUNT + 1, registry.size());
+        assertThrows(IllegalArgumentException.class, () -> registry.register("bad key", null));
+    }
+
+    @Test
+    void windowedRegistrationIsIdempotent() {
+        // Встроенные статистики общие для всех реестров, поэтому окна добавляются к своей
+        StatRegistry registry = new StatRegistry();
+        StatType fish = registry.register("fish_caught", null);
+        StatType daily = registry.registerWindowed(fish, StatWindow.DAILY);
+        assertSame(daily, registry.registerWindowed(fish, StatWindow.DAILY));
+        assertSame(daily, registry.get("fish_caught_daily"));
+        assertTrue(registry.get("fish_caught_daily_last").isPrevious());
+        assertEquals(StatRegistry.BUILT_IN_COUNT + 3, registry.size());
+    }
+
+    // После перезапуска плагины могут регистрировать статистики в другом порядке:
+    // ключи из хранилища получают id при открытии, и данные остаются за своими ключами
+    @Test
+    void idsFollowStoredKeysAcrossReload() throws IOException {
+        StatRegistry registry = new StatRegistry();
+        StatType blocks = registry.register("blocks_broken", null);
+        StatType fish = registry.register("fish_caught", null);
+        BinaryStatsStorage storage = open(registry);
+        storage.save(List.of(StatsSnapshot.empty(PLAYER).with(blocks, 10).with(fish, 20)));
+        storage.close();
+
+        StatRegistry reloaded = new StatRegistry();
+        BinaryStatsStorage reopened = open(reloaded);
+        StatType reloadedFish = reloaded.register("fish_caught", "Поймано рыбы");
+        StatType reloadedBlocks = reloaded.register("blocks_broken", "Сломано блоков");
+        assertEquals(blocks.id(), reloadedBlocks.id());
+        assertEquals(fish.id(), reloadedFish.id());
+        assertEquals(registry.size(), reloaded.size());
+
+        StatsSnapshot snapshot = reopened.load(PLAYER);
+        assertEquals(10, snapshot.get(reloadedBlocks));
+        assertEquals(20, snapshot.get(reloadedFish));
+        reopened.close();
+    }
+
+    // Новая статистика, зарегистрированная до открытия хранилища, не сдвигает данные уже сохраненных
+    @Test
+    void newKeyBeforeOpenKeepsStoredData() throws IOException {
+        StatRegistry registry = new StatRegistry();
+        StatType blocks = registry.register("blocks_broken", null);
+        BinaryStatsStorage storage = open(registry);
+        storage.save(List.of(StatsSnapshot.empty(PLAYER).with(blocks, 5)));
+        storage.close();
+
+        StatRegistry reloaded = new StatRegistry();
+        StatType added = reloaded.register("fish_caught", null);
+        BinaryStatsStorage reopened = open(reloaded);
+        StatsSnapshot snapshot = reopened.load(PLAYER);
+        assertEquals(5, snapshot.get(reloaded.get("blocks_broken")));
+        assertEquals(0, snapshot.get(added));
+        reopened.close();
+    }
+
+    private BinaryStatsStorage open(StatRegistry registry) throws IOException {
+        BinaryStatsStorage storage = new BinaryStatsStorage(new File(directory, "playerdata.bin"), registry, LOGGER);
+        storage.open();
+        return storage;
+    }
+}